@@ -0,0 +1,132 @@
+package com.twilio.video.examples.benchmark
+
+import com.twilio.video.examples.common.ByteArrayPool
+import com.twilio.video.examples.common.i420ToArgb
+import com.twilio.video.examples.common.i420ToArgbScaled
+import com.twilio.video.examples.common.i420ToNv21
+import com.twilio.video.examples.common.i420ToNv21Rotated
+import com.twilio.video.examples.common.i420ToSemiPlanar
+import com.twilio.video.examples.common.nv21Size
+import java.nio.ByteBuffer
+import java.util.concurrent.TimeUnit
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.BenchmarkMode
+import org.openjdk.jmh.annotations.Mode
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Param
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+
+/**
+ * Measures the conversions behind the [tvi.webrtc.VideoFrame] extensions in common on synthetic
+ * frames of several resolutions and stride paddings. The platform steps that follow them, such
+ * as Bitmap.setPixels and YuvImage.compressToJpeg, only exist on a device and are covered by
+ * ToBitmapBenchmark in the common instrumentation tests instead.
+ *
+ * Run with the gc profiler, as configured in build.gradle, to see the allocation rate next to the
+ * throughput of each conversion.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+open class FrameConversionBenchmark {
+    @Param("640x480", "1280x720", "1920x1080")
+    lateinit var resolution: String
+
+    @Param("0", "64")
+    var padding = 0
+
+    private lateinit var frame: SyntheticI420Buffer
+    private lateinit var nv21: ByteArray
+    private lateinit var argb: IntArray
+    private lateinit var thumbnail: IntArray
+    private lateinit var directBuffer: ByteBuffer
+    private val pool = ByteArrayPool()
+
+    @Setup
+    fun setUp() {
+        frame = SyntheticI420Buffer.parse(resolution, padding)
+        nv21 = ByteArray(nv21Size(frame.width, frame.height))
+        argb = IntArray(frame.width * frame.height)
+        thumbnail = IntArray(THUMBNAIL_WIDTH * THUMBNAIL_HEIGHT)
+        directBuffer = ByteBuffer.allocateDirect(nv21Size(frame.width, frame.height))
+    }
+
+    /**
+     * The NV21 packing behind toBitmap(BitmapConversion.JPEG) and writeJpeg.
+     */
+    @Benchmark
+    fun packNv21(): ByteArray {
+        i420ToNv21(
+            frame.dataY, frame.strideY,
+            frame.dataU, frame.strideU,
+            frame.dataV, frame.strideV,
+            nv21, frame.width, frame.height, pool
+        )
+        return nv21
+    }
+
+    /**
+     * The NV21 packing behind writeJpeg for frames rotated by 90 degrees.
+     */
+    @Benchmark
+    fun packNv21Rotated(): ByteArray {
+        i420ToNv21Rotated(
+            frame.dataY, frame.strideY,
+            frame.dataU, frame.strideU,
+            frame.dataV, frame.strideV,
+            nv21, frame.width, frame.height, 90, pool
+        )
+        return nv21
+    }
+
+    /**
+     * The pixel conversion behind toBitmap(BitmapConversion.DIRECT).
+     */
+    @Benchmark
+    fun convertToArgb(): IntArray {
+        i420ToArgb(
+            frame.dataY, frame.strideY,
+            frame.dataU, frame.strideU,
+            frame.dataV, frame.strideV,
+            argb, frame.width, frame.height, pool
+        )
+        return argb
+    }
+
+    /**
+     * The pixel conversion behind toBitmap(targetWidth, targetHeight) for a thumbnail.
+     */
+    @Benchmark
+    fun convertToThumbnail(): IntArray {
+        i420ToArgbScaled(
+            frame.dataY, frame.strideY,
+            frame.dataU, frame.strideU,
+            frame.dataV, frame.strideV,
+            0, 0, frame.width, frame.height,
+            thumbnail, THUMBNAIL_WIDTH, THUMBNAIL_HEIGHT, pool
+        )
+        return thumbnail
+    }
+
+    /**
+     * The copy behind copyTo(ByteBuffer, SemiPlanarFormat.NV12).
+     */
+    @Benchmark
+    fun copyToDirectNv12(): ByteBuffer {
+        directBuffer.clear()
+        i420ToSemiPlanar(
+            frame.dataY, frame.strideY,
+            frame.dataU, frame.strideU,
+            frame.dataV, frame.strideV,
+            directBuffer, frame.width, frame.height, false, pool
+        )
+        return directBuffer
+    }
+
+    companion object {
+        private const val THUMBNAIL_WIDTH = 160
+        private const val THUMBNAIL_HEIGHT = 90
+    }
+}
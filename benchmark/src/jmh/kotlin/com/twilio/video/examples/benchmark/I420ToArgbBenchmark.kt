@@ -0,0 +1,58 @@
+package com.twilio.video.examples.benchmark
+
+import com.twilio.video.examples.common.ByteArrayPool
+import com.twilio.video.examples.common.FrameConversionExecutor
+import com.twilio.video.examples.common.i420ToArgb
+import com.twilio.video.examples.common.i420ToArgbParallel
+import java.util.concurrent.TimeUnit
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.BenchmarkMode
+import org.openjdk.jmh.annotations.Mode
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Param
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+
+/**
+ * Compares sequential and striped I420 to ARGB conversion of synthetic frames.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+open class I420ToArgbBenchmark {
+    @Param("1280x720", "1920x1080", "3840x2160")
+    lateinit var resolution: String
+
+    private lateinit var frame: SyntheticI420Buffer
+    private lateinit var argb: IntArray
+    private val pool = ByteArrayPool()
+
+    @Setup
+    fun setUp() {
+        frame = SyntheticI420Buffer.parse(resolution)
+        argb = IntArray(frame.width * frame.height)
+    }
+
+    @Benchmark
+    fun sequential(): IntArray {
+        i420ToArgb(
+            frame.dataY, frame.strideY,
+            frame.dataU, frame.strideU,
+            frame.dataV, frame.strideV,
+            argb, frame.width, frame.height, pool
+        )
+        return argb
+    }
+
+    @Benchmark
+    fun parallel(): IntArray {
+        i420ToArgbParallel(
+            frame.dataY, frame.strideY,
+            frame.dataU, frame.strideU,
+            frame.dataV, frame.strideV,
+            argb, frame.width, frame.height, FrameConversionExecutor.rowPool
+        )
+        return argb
+    }
+}
@@ -0,0 +1,60 @@
+package com.twilio.video.examples.benchmark
+
+import com.twilio.video.examples.common.ByteArrayPool
+import com.twilio.video.examples.common.rgbaToI420
+import java.nio.ByteBuffer
+import java.util.Random
+import java.util.concurrent.TimeUnit
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.BenchmarkMode
+import org.openjdk.jmh.annotations.Mode
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Param
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+
+/**
+ * Measures RGBA to I420 conversion of synthetic view captures into reused direct planes, as done
+ * by ViewCapturer for every frame.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+open class RgbaToI420Benchmark {
+    @Param("1280x720", "1920x1080", "2560x1600")
+    lateinit var resolution: String
+
+    private var width = 0
+    private var height = 0
+    private lateinit var rgba: ByteBuffer
+    private lateinit var dataY: ByteBuffer
+    private lateinit var dataU: ByteBuffer
+    private lateinit var dataV: ByteBuffer
+    private val pool = ByteArrayPool()
+
+    @Setup
+    fun setUp() {
+        val (parsedWidth, parsedHeight) = resolution.split('x').map { it.toInt() }
+        width = parsedWidth
+        height = parsedHeight
+        val pixels = ByteArray(width * height * 4).also { Random(1).nextBytes(it) }
+        rgba = ByteBuffer.allocateDirect(pixels.size).put(pixels)
+        val chromaSize = (width + 1) / 2 * ((height + 1) / 2)
+        dataY = ByteBuffer.allocateDirect(width * height)
+        dataU = ByteBuffer.allocateDirect(chromaSize)
+        dataV = ByteBuffer.allocateDirect(chromaSize)
+    }
+
+    @Benchmark
+    fun convertToI420(): ByteBuffer {
+        rgbaToI420(
+            rgba, width * 4,
+            dataY, width,
+            dataU, (width + 1) / 2,
+            dataV, (width + 1) / 2,
+            width, height, pool
+        )
+        return dataY
+    }
+}
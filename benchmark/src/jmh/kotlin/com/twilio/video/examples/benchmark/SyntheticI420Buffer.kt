@@ -0,0 +1,37 @@
+package com.twilio.video.examples.benchmark
+
+import com.twilio.video.examples.common.chromaHeight
+import com.twilio.video.examples.common.chromaWidth
+import java.nio.ByteBuffer
+
+/**
+ * A host JVM stand-in for [tvi.webrtc.VideoFrame.I420Buffer], which cannot be loaded outside of
+ * Android. The planes are direct buffers like those handed out by the SDK, optionally padded by
+ * [padding] bytes per row the way hardware decoders pad their output.
+ */
+class SyntheticI420Buffer(val width: Int, val height: Int, padding: Int = 0) {
+    val strideY = width + padding
+    val strideU = chromaWidth(width) + padding
+    val strideV = chromaWidth(width) + padding
+    val dataY: ByteBuffer = syntheticPlane(strideY, height)
+    val dataU: ByteBuffer = syntheticPlane(strideU, chromaHeight(height))
+    val dataV: ByteBuffer = syntheticPlane(strideV, chromaHeight(height))
+
+    companion object {
+        /**
+         * Parses a resolution such as "1280x720" into a buffer.
+         */
+        fun parse(resolution: String, padding: Int = 0): SyntheticI420Buffer {
+            val dimensions = resolution.split("x")
+            return SyntheticI420Buffer(dimensions[0].toInt(), dimensions[1].toInt(), padding)
+        }
+
+        private fun syntheticPlane(stride: Int, rows: Int): ByteBuffer {
+            val plane = ByteBuffer.allocateDirect(stride * rows)
+            for (i in 0 until plane.capacity()) {
+                plane.put(i, (i % stride + i / stride).toByte())
+            }
+            return plane
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.twilio.video.examples.common
+
+import android.support.test.runner.AndroidJUnit4
+import android.util.Log
+import java.nio.ByteBuffer
+import org.junit.Assert.assertNotNull
+import org.junit.Test
+import org.junit.runner.RunWith
+import tvi.webrtc.JavaI420Buffer
+import tvi.webrtc.VideoFrame
+
+/**
+ * Compares the cost of [toBitmap] with [BitmapConversion.DIRECT] and [BitmapConversion.JPEG] on
+ * a device. Results are written to logcat under the [TAG] tag.
+ */
+@RunWith(AndroidJUnit4::class)
+class ToBitmapBenchmark {
+    @Test
+    fun direct_720p() = measure(BitmapConversion.DIRECT, 1280, 720)
+
+    @Test
+    fun jpeg_720p() = measure(BitmapConversion.JPEG, 1280, 720)
+
+    @Test
+    fun direct_1080p() = measure(BitmapConversion.DIRECT, 1920, 1080)
+
+    @Test
+    fun jpeg_1080p() = measure(BitmapConversion.JPEG, 1920, 1080)
+
+    private fun measure(conversion: BitmapConversion, width: Int, height: Int) {
+        val videoFrame = createVideoFrame(width, height)
+
+        repeat(WARM_UP_ITERATIONS) { assertNotNull(videoFrame.toBitmap(conversion)) }
+        val startNs = System.nanoTime()
+        repeat(MEASURED_ITERATIONS) { videoFrame.toBitmap(conversion) }
+        val averageMs = (System.nanoTime() - startNs) / MEASURED_ITERATIONS / 1e6
+        videoFrame.release()
+
+        Log.i(TAG, "$conversion ${width}x$height: ${"%.2f".format(averageMs)} ms per frame")
+    }
+
+    private fun createVideoFrame(width: Int, height: Int): VideoFrame {
+        val chromaWidth = (width + 1) / 2
+        val chromaHeight = (height + 1) / 2
+        val dataY = ByteBuffer.allocateDirect(width * height)
+        val dataU = ByteBuffer.allocateDirect(chromaWidth * chromaHeight)
+        val dataV = ByteBuffer.allocateDirect(chromaWidth * chromaHeight)
+
+        // Fill the planes with a gradient so the JPEG encoder has real content to compress
+        for (i in 0 until dataY.capacity()) {
+            dataY.put(i, (i % width).toByte())
+        }
+        for (i in 0 until dataU.capacity()) {
+            dataU.put(i, (i % chromaWidth).toByte())
+            dataV.put(i, (255 - i % chromaWidth).toByte())
+        }
+        val buffer = JavaI420Buffer.wrap(
+            width, height,
+            dataY, width,
+            dataU, chromaWidth,
+            dataV, chromaWidth,
+            null
+        )
+        return VideoFrame(buffer, 0, 0)
+    }
+
+    companion object {
+        private const val TAG = "ToBitmapBenchmark"
+        private const val WARM_UP_ITERATIONS = 5
+        private const val MEASURED_ITERATIONS = 20
+    }
+}
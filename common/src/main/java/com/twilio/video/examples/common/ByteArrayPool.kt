@@ -0,0 +1,107 @@
+package com.twilio.video.examples.common
+
+import java.nio.ByteBuffer
+import java.util.ArrayDeque
+
+/**
+ * A small pool of reusable arrays or buffers keyed by their size. Frame conversion runs at video
+ * rate, so buffers are recycled between calls rather than left for the garbage collector.
+ *
+ * At most [maxSizes] distinct sizes are tracked and at most [maxPerSize] objects are kept for each
+ * size. When a new size arrives and the pool is full, the least recently used size is dropped.
+ * Acquiring and releasing do not allocate once the pool is warm.
+ */
+open class SizeKeyedPool<T : Any>(
+    private val maxSizes: Int,
+    private val maxPerSize: Int,
+    private val sizeOf: (T) -> Int,
+    private val allocate: (Int) -> T
+) {
+    private class Bucket<T>(var size: Int, capacity: Int) {
+        val items = ArrayDeque<T>(capacity)
+    }
+
+    private val buckets = ArrayList<Bucket<T>>(maxSizes)
+
+    /**
+     * Returns a pooled object of exactly [size], allocating one if none is available.
+     */
+    @Synchronized
+    open fun acquire(size: Int): T {
+        return bucketFor(size)?.items?.pollFirst() ?: allocate(size)
+    }
+
+    /**
+     * Returns [item] to the pool. Items beyond the per size limit are dropped.
+     */
+    @Synchronized
+    fun release(item: T) {
+        val size = sizeOf(item)
+        val bucket = bucketFor(size) ?: newBucket(size)
+        if (bucket.items.size < maxPerSize) {
+            bucket.items.addFirst(item)
+        }
+    }
+
+    /**
+     * Drops every pooled object.
+     */
+    @Synchronized
+    fun clear() {
+        buckets.clear()
+    }
+
+    private fun bucketFor(size: Int): Bucket<T>? {
+        for (i in buckets.indices) {
+            val bucket = buckets[i]
+            if (bucket.size == size) {
+                // Keep the most recently used size at the front
+                if (i != 0) {
+                    buckets.removeAt(i)
+                    buckets.add(0, bucket)
+                }
+                return bucket
+            }
+        }
+        return null
+    }
+
+    private fun newBucket(size: Int): Bucket<T> {
+        val bucket = if (buckets.size == maxSizes) {
+            buckets.removeAt(buckets.size - 1).also {
+                it.items.clear()
+                it.size = size
+            }
+        } else {
+            Bucket(size, maxPerSize)
+        }
+        buckets.add(0, bucket)
+        return bucket
+    }
+}
+
+/**
+ * A [SizeKeyedPool] of heap byte arrays.
+ */
+class ByteArrayPool(maxSizes: Int = 4, maxPerSize: Int = 2) :
+    SizeKeyedPool<ByteArray>(maxSizes, maxPerSize, { it.size }, { ByteArray(it) })
+
+/**
+ * A [SizeKeyedPool] of heap int arrays, keyed by their length.
+ */
+class IntArrayPool(maxSizes: Int = 2, maxPerSize: Int = 2) :
+    SizeKeyedPool<IntArray>(maxSizes, maxPerSize, { it.size }, { IntArray(it) })
+
+/**
+ * A [SizeKeyedPool] of direct byte buffers, keyed by their capacity. Buffers are handed out
+ * cleared.
+ */
+class DirectByteBufferPool(maxSizes: Int = 2, maxPerSize: Int = 3) :
+    SizeKeyedPool<ByteBuffer>(
+        maxSizes,
+        maxPerSize,
+        { it.capacity() },
+        { ByteBuffer.allocateDirect(it) }
+    ) {
+    override fun acquire(size: Int): ByteBuffer = super.acquire(size).apply { clear() }
+}
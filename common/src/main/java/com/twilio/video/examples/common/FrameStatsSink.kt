@@ -0,0 +1,148 @@
+package com.twilio.video.examples.common
+
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicLongArray
+import kotlin.math.abs
+import tvi.webrtc.VideoFrame
+import tvi.webrtc.VideoSink
+
+/**
+ * A point in time view of the frames received by a [FrameStatsSink].
+ *
+ * [framesPerSecond] and [jitterMs] are smoothed over roughly the last sixteen frame intervals,
+ * leaving out gaps. A gap is an interval longer than the sink's gap threshold.
+ */
+data class FrameStatsSnapshot(
+    val frames: Long,
+    val framesPerSecond: Double,
+    val jitterMs: Double,
+    val width: Int,
+    val height: Int,
+    val rotation: Int,
+    val resolutionChanges: Long,
+    val rotationChanges: Long,
+    val gaps: Long,
+    val longestGapMs: Long
+)
+
+/**
+ * A [VideoSink] that records what a track actually delivers: the frame rate, the jitter between
+ * frame timestamps, resolution and rotation changes, and gaps in the stream. Attach one sink per
+ * track and poll [snapshot] from any thread.
+ *
+ * Every track gets its own set of counters, written only by the thread delivering its frames, so
+ * [onFrame] takes no locks and only performs a handful of ordered atomic stores.
+ */
+class FrameStatsSink(gapThresholdMs: Long = DEFAULT_GAP_THRESHOLD_MS) : VideoSink {
+    private val recorder = FrameStatsRecorder(TimeUnit.MILLISECONDS.toNanos(gapThresholdMs))
+
+    override fun onFrame(videoFrame: VideoFrame) {
+        recorder.record(
+            videoFrame.buffer.width,
+            videoFrame.buffer.height,
+            videoFrame.rotation,
+            videoFrame.timestampNs
+        )
+    }
+
+    /**
+     * Returns the statistics recorded so far.
+     */
+    fun snapshot(): FrameStatsSnapshot = recorder.snapshot()
+
+    companion object {
+        /**
+         * Intervals longer than this are counted as gaps by default.
+         */
+        const val DEFAULT_GAP_THRESHOLD_MS = 500L
+    }
+}
+
+/**
+ * The counters behind [FrameStatsSink]. [record] must only be called from one thread at a time,
+ * while [snapshot] may be called from any thread.
+ */
+internal class FrameStatsRecorder(private val gapThresholdNs: Long) {
+    private val counters = AtomicLongArray(COUNTERS)
+
+    fun record(width: Int, height: Int, rotation: Int, timestampNs: Long) {
+        val frames = counters.get(FRAMES)
+        if (frames > 0) {
+            if (width.toLong() != counters.get(WIDTH) || height.toLong() != counters.get(HEIGHT)) {
+                counters.lazySet(RESOLUTION_CHANGES, counters.get(RESOLUTION_CHANGES) + 1)
+            }
+            if (rotation.toLong() != counters.get(ROTATION)) {
+                counters.lazySet(ROTATION_CHANGES, counters.get(ROTATION_CHANGES) + 1)
+            }
+            recordInterval(timestampNs - counters.get(LAST_TIMESTAMP_NS))
+        }
+        counters.lazySet(WIDTH, width.toLong())
+        counters.lazySet(HEIGHT, height.toLong())
+        counters.lazySet(ROTATION, rotation.toLong())
+        counters.lazySet(LAST_TIMESTAMP_NS, timestampNs)
+        counters.lazySet(FRAMES, frames + 1)
+    }
+
+    fun snapshot(): FrameStatsSnapshot {
+        val meanIntervalNs = counters.get(MEAN_INTERVAL_NS)
+        return FrameStatsSnapshot(
+            counters.get(FRAMES),
+            if (meanIntervalNs > 0) NANOS_PER_SECOND / meanIntervalNs else 0.0,
+            counters.get(JITTER_NS) / NANOS_PER_MILLISECOND,
+            counters.get(WIDTH).toInt(),
+            counters.get(HEIGHT).toInt(),
+            counters.get(ROTATION).toInt(),
+            counters.get(RESOLUTION_CHANGES),
+            counters.get(ROTATION_CHANGES),
+            counters.get(GAPS),
+            TimeUnit.NANOSECONDS.toMillis(counters.get(LONGEST_GAP_NS))
+        )
+    }
+
+    private fun recordInterval(intervalNs: Long) {
+        if (intervalNs <= 0) {
+            // Repeated or out of order timestamps say nothing about the frame rate
+            return
+        }
+        if (intervalNs > gapThresholdNs) {
+            counters.lazySet(GAPS, counters.get(GAPS) + 1)
+            if (intervalNs > counters.get(LONGEST_GAP_NS)) {
+                counters.lazySet(LONGEST_GAP_NS, intervalNs)
+            }
+            return
+        }
+
+        // Exponential moving averages in the style of the RTP interarrival jitter estimate
+        val meanIntervalNs = counters.get(MEAN_INTERVAL_NS)
+        if (meanIntervalNs == 0L) {
+            counters.lazySet(MEAN_INTERVAL_NS, intervalNs)
+        } else {
+            val deviationNs = abs(intervalNs - meanIntervalNs)
+            val jitterNs = counters.get(JITTER_NS)
+            counters.lazySet(
+                MEAN_INTERVAL_NS,
+                meanIntervalNs + (intervalNs - meanIntervalNs) / SMOOTHING
+            )
+            counters.lazySet(JITTER_NS, jitterNs + (deviationNs - jitterNs) / SMOOTHING)
+        }
+    }
+
+    private companion object {
+        const val FRAMES = 0
+        const val LAST_TIMESTAMP_NS = 1
+        const val MEAN_INTERVAL_NS = 2
+        const val JITTER_NS = 3
+        const val WIDTH = 4
+        const val HEIGHT = 5
+        const val ROTATION = 6
+        const val RESOLUTION_CHANGES = 7
+        const val ROTATION_CHANGES = 8
+        const val GAPS = 9
+        const val LONGEST_GAP_NS = 10
+        const val COUNTERS = 11
+
+        const val SMOOTHING = 16
+        const val NANOS_PER_SECOND = 1_000_000_000.0
+        const val NANOS_PER_MILLISECOND = 1_000_000.0
+    }
+}
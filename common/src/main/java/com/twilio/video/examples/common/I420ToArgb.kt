@@ -0,0 +1,246 @@
+@file:JvmName("I420ToArgb")
+package com.twilio.video.examples.common
+
+import java.nio.ByteBuffer
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.Future
+import java.util.concurrent.atomic.AtomicInteger
+
+/*
+ * Fixed point BT.601 video range coefficients scaled by 2^16. The luma table also carries the
+ * rounding term so a single shift produces the final channel value.
+ */
+internal const val FIXED_POINT_SHIFT = 16
+private const val FIXED_POINT_HALF = 1 shl (FIXED_POINT_SHIFT - 1)
+private const val Y_GAIN = 76284 // 1.164
+private const val V_TO_R = 104595 // 1.596
+private const val U_TO_G = 25625 // 0.391
+private const val V_TO_G = 53281 // 0.813
+private const val U_TO_B = 132252 // 2.018
+internal const val OPAQUE_ALPHA = 0xff shl 24
+
+/**
+ * Frames smaller than this are converted on the calling thread by [i420ToArgbParallel], since
+ * handing stripes to other threads costs more than it saves.
+ */
+internal const val PARALLEL_MIN_PIXELS = 640 * 480
+
+internal val yTable = IntArray(256) { Y_GAIN * (it - 16) + FIXED_POINT_HALF }
+internal val vToRTable = IntArray(256) { V_TO_R * (it - 128) }
+internal val uToGTable = IntArray(256) { U_TO_G * (it - 128) }
+internal val vToGTable = IntArray(256) { V_TO_G * (it - 128) }
+internal val uToBTable = IntArray(256) { U_TO_B * (it - 128) }
+
+/**
+ * Converts I420 planes to ARGB_8888 pixels in the [android.graphics.Color] int layout expected by
+ * [android.graphics.Bitmap.setPixels]. Each source row is read with a bulk copy into scratch rows
+ * acquired from [pool] and converted with the fixed point lookup tables above.
+ *
+ * The output is rotated clockwise by [rotation] degrees in the same pass, so 90 and 270 degree
+ * frames produce a [height] x [width] image. [dst] must hold at least [width] x [height] pixels
+ * and is written with a row stride equal to the rotated width.
+ */
+internal fun i420ToArgb(
+    srcY: ByteBuffer,
+    strideY: Int,
+    srcU: ByteBuffer,
+    strideU: Int,
+    srcV: ByteBuffer,
+    strideV: Int,
+    dst: IntArray,
+    width: Int,
+    height: Int,
+    pool: ByteArrayPool,
+    rotation: Int = 0
+) {
+    require(dst.size >= width * height) { "Destination is too small" }
+    i420ToArgbRows(
+        srcY, strideY, srcU, strideU, srcV, strideV,
+        dst, width, height, pool, columnStep(rotation, height), rotation, 0, height
+    )
+}
+
+/**
+ * Same as [i420ToArgb], but frames of at least [PARALLEL_MIN_PIXELS] pixels are split into
+ * horizontal stripes that are converted concurrently on [executor]. The calling thread converts
+ * the first stripe itself and returns once every stripe is done. Smaller frames, or a
+ * [parallelism] of one, take the sequential path.
+ *
+ * Every stripe takes three scratch rows from [pool], so it should keep at least twice
+ * [parallelism] arrays per size, as [FrameConversionExecutor.rowPool] does, or stripes allocate
+ * their rows on every call.
+ */
+internal fun i420ToArgbParallel(
+    srcY: ByteBuffer,
+    strideY: Int,
+    srcU: ByteBuffer,
+    strideU: Int,
+    srcV: ByteBuffer,
+    strideV: Int,
+    dst: IntArray,
+    width: Int,
+    height: Int,
+    pool: ByteArrayPool,
+    rotation: Int = 0,
+    executor: ExecutorService = FrameConversionExecutor.executor,
+    parallelism: Int = FrameConversionExecutor.parallelism
+) {
+    if (parallelism < 2 || width * height < PARALLEL_MIN_PIXELS) {
+        i420ToArgb(
+            srcY, strideY, srcU, strideU, srcV, strideV,
+            dst, width, height, pool, rotation
+        )
+        return
+    }
+    require(dst.size >= width * height) { "Destination is too small" }
+    val columnStep = columnStep(rotation, height)
+
+    // Stripes start on even rows so that each one begins with a fresh chroma row
+    val stripeHeight = ((height + parallelism - 1) / parallelism + 1) and 1.inv()
+    val stripes = ArrayList<Future<*>>(parallelism)
+    var rowStart = stripeHeight
+    while (rowStart < height) {
+        val stripeStart = rowStart
+        val stripeEnd = minOf(stripeStart + stripeHeight, height)
+        stripes.add(
+            executor.submit(
+                Runnable {
+                    i420ToArgbRows(
+                        srcY.duplicate(), strideY,
+                        srcU.duplicate(), strideU,
+                        srcV.duplicate(), strideV,
+                        dst, width, height, pool, columnStep, rotation, stripeStart, stripeEnd
+                    )
+                }
+            )
+        )
+        rowStart = stripeEnd
+    }
+    i420ToArgbRows(
+        srcY.duplicate(), strideY, srcU.duplicate(), strideU, srcV.duplicate(), strideV,
+        dst, width, height, pool, columnStep, rotation, 0, minOf(stripeHeight, height)
+    )
+    for (stripe in stripes) {
+        try {
+            stripe.get()
+        } catch (e: ExecutionException) {
+            throw e.cause ?: e
+        }
+    }
+}
+
+/**
+ * The shared, bounded pool used by [i420ToArgbParallel]. It holds one thread less than
+ * [parallelism] because the calling thread converts a stripe too.
+ */
+internal object FrameConversionExecutor {
+    private const val MAX_PARALLELISM = 4
+
+    val parallelism = Runtime.getRuntime().availableProcessors().coerceIn(1, MAX_PARALLELISM)
+
+    /**
+     * Scratch rows for [parallelism] concurrent stripes, which each hold one luma and two chroma
+     * rows.
+     */
+    val rowPool = ByteArrayPool(maxPerSize = 2 * parallelism)
+    val executor: ExecutorService by lazy {
+        val threadCount = AtomicInteger()
+        Executors.newFixedThreadPool(maxOf(parallelism - 1, 1)) { runnable ->
+            Thread(runnable, "FrameConversion-${threadCount.incrementAndGet()}").apply {
+                isDaemon = true
+            }
+        }
+    }
+}
+
+/**
+ * Distance in [dst] between horizontally adjacent source pixels once rotated.
+ */
+internal fun columnStep(rotation: Int, height: Int) = when (rotation) {
+    0 -> 1
+    90 -> height
+    180 -> -1
+    270 -> -height
+    else -> throw IllegalArgumentException("Unsupported rotation $rotation")
+}
+
+/**
+ * Where the first pixel of source [row] lands in [dst] once a [width] x [height] image is rotated.
+ */
+internal fun rotatedRowOffset(rotation: Int, row: Int, width: Int, height: Int) = when (rotation) {
+    0 -> row * width
+    90 -> height - 1 - row
+    180 -> (height - row) * width - 1
+    else -> (width - 1) * height + row
+}
+
+/**
+ * Converts source rows [rowStart] until [rowEnd]. [rowStart] must be even.
+ */
+private fun i420ToArgbRows(
+    srcY: ByteBuffer,
+    strideY: Int,
+    srcU: ByteBuffer,
+    strideU: Int,
+    srcV: ByteBuffer,
+    strideV: Int,
+    dst: IntArray,
+    width: Int,
+    height: Int,
+    pool: ByteArrayPool,
+    columnStep: Int,
+    rotation: Int,
+    rowStart: Int,
+    rowEnd: Int
+) {
+    val chromaWidth = chromaWidth(width)
+    val rowY = pool.acquire(width)
+    val rowU = pool.acquire(chromaWidth)
+    val rowV = pool.acquire(chromaWidth)
+    for (row in rowStart until rowEnd) {
+        readRow(srcY, row * strideY, rowY, width)
+        if (row and 1 == 0) {
+            readRow(srcU, (row shr 1) * strideU, rowU, chromaWidth)
+            readRow(srcV, (row shr 1) * strideV, rowV, chromaWidth)
+        }
+
+        var offset = rotatedRowOffset(rotation, row, width, height)
+        for (col in 0 until width) {
+            dst[offset] = yuvToArgb(
+                rowY[col].toInt() and 0xff,
+                rowU[col shr 1].toInt() and 0xff,
+                rowV[col shr 1].toInt() and 0xff
+            )
+            offset += columnStep
+        }
+    }
+    pool.release(rowV)
+    pool.release(rowU)
+    pool.release(rowY)
+}
+
+/**
+ * Converts a single BT.601 video range sample to an opaque ARGB color int.
+ */
+@Suppress("NOTHING_TO_INLINE")
+internal inline fun yuvToArgb(y: Int, u: Int, v: Int): Int {
+    val luma = yTable[y]
+    val r = clampChannel((luma + vToRTable[v]) shr FIXED_POINT_SHIFT)
+    val g = clampChannel((luma - uToGTable[u] - vToGTable[v]) shr FIXED_POINT_SHIFT)
+    val b = clampChannel((luma + uToBTable[u]) shr FIXED_POINT_SHIFT)
+    return OPAQUE_ALPHA or (r shl 16) or (g shl 8) or b
+}
+
+@Suppress("NOTHING_TO_INLINE")
+internal inline fun clampChannel(value: Int): Int =
+    if (value < 0) 0 else if (value > 255) 255 else value
+
+/**
+ * Copies [length] bytes starting at [offset] of [src] into the start of [dst].
+ */
+internal fun readRow(src: ByteBuffer, offset: Int, dst: ByteArray, length: Int) {
+    src.position(offset)
+    src.get(dst, 0, length)
+}
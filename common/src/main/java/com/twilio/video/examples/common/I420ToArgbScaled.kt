@@ -0,0 +1,119 @@
+@file:JvmName("I420ToArgbScaled")
+package com.twilio.video.examples.common
+
+import java.nio.ByteBuffer
+
+/**
+ * Converts the [cropWidth] x [cropHeight] region at [cropX], [cropY] of an I420 frame to a
+ * [dstWidth] x [dstHeight] ARGB_8888 image, scaling in the same pass. Only the source rows that
+ * contribute to an output row are read, so the cost follows the output size rather than the
+ * frame size.
+ *
+ * A region exactly twice the output size in both directions is averaged with a 2x2 box filter.
+ * Any other ratio is sampled bilinearly. Chroma is taken from the block nearest to each output
+ * pixel. The output is rotated clockwise by [rotation] degrees like [i420ToArgb], so [dstWidth]
+ * and [dstHeight] describe the image before rotation.
+ */
+internal fun i420ToArgbScaled(
+    srcY: ByteBuffer,
+    strideY: Int,
+    srcU: ByteBuffer,
+    strideU: Int,
+    srcV: ByteBuffer,
+    strideV: Int,
+    cropX: Int,
+    cropY: Int,
+    cropWidth: Int,
+    cropHeight: Int,
+    dst: IntArray,
+    dstWidth: Int,
+    dstHeight: Int,
+    pool: ByteArrayPool,
+    rotation: Int = 0
+) {
+    require(cropX >= 0 && cropY >= 0 && cropWidth > 0 && cropHeight > 0) { "Invalid crop" }
+    require(dstWidth > 0 && dstHeight > 0) { "Invalid output size" }
+    require(dst.size >= dstWidth * dstHeight) { "Destination is too small" }
+    val columnStep = columnStep(rotation, dstHeight)
+
+    // The chroma columns covering the crop, which may start and end on odd luma columns
+    val chromaStart = cropX shr 1
+    val chromaSpan = ((cropX + cropWidth - 1) shr 1) - chromaStart + 1
+    val rowY0 = pool.acquire(cropWidth)
+    val rowY1 = pool.acquire(cropWidth)
+    val rowU = pool.acquire(chromaSpan)
+    val rowV = pool.acquire(chromaSpan)
+
+    if (cropWidth == dstWidth * 2 && cropHeight == dstHeight * 2) {
+        for (row in 0 until dstHeight) {
+            val sourceRow = cropY + row * 2
+            readRow(srcY, sourceRow * strideY + cropX, rowY0, cropWidth)
+            readRow(srcY, (sourceRow + 1) * strideY + cropX, rowY1, cropWidth)
+            readRow(srcU, (sourceRow shr 1) * strideU + chromaStart, rowU, chromaSpan)
+            readRow(srcV, (sourceRow shr 1) * strideV + chromaStart, rowV, chromaSpan)
+
+            var offset = rotatedRowOffset(rotation, row, dstWidth, dstHeight)
+            for (col in 0 until dstWidth) {
+                val sourceCol = col * 2
+                val luma = ((rowY0[sourceCol].toInt() and 0xff) +
+                    (rowY0[sourceCol + 1].toInt() and 0xff) +
+                    (rowY1[sourceCol].toInt() and 0xff) +
+                    (rowY1[sourceCol + 1].toInt() and 0xff) + 2) shr 2
+                val chromaCol = ((cropX + sourceCol) shr 1) - chromaStart
+                dst[offset] = yuvToArgb(
+                    luma,
+                    rowU[chromaCol].toInt() and 0xff,
+                    rowV[chromaCol].toInt() and 0xff
+                )
+                offset += columnStep
+            }
+        }
+    } else {
+        for (row in 0 until dstHeight) {
+            // Source position of the output pixel centre in 16.16 fixed point
+            val sourceY = clampedSourcePosition(row, cropHeight, dstHeight)
+            val sourceRow0 = sourceY shr 16
+            val sourceRow1 = minOf(sourceRow0 + 1, cropHeight - 1)
+            val weightY = (sourceY and 0xffff) shr 8
+            val nearestRow = cropY + if (weightY < 128) sourceRow0 else sourceRow1
+            readRow(srcY, (cropY + sourceRow0) * strideY + cropX, rowY0, cropWidth)
+            readRow(srcY, (cropY + sourceRow1) * strideY + cropX, rowY1, cropWidth)
+            readRow(srcU, (nearestRow shr 1) * strideU + chromaStart, rowU, chromaSpan)
+            readRow(srcV, (nearestRow shr 1) * strideV + chromaStart, rowV, chromaSpan)
+
+            var offset = rotatedRowOffset(rotation, row, dstWidth, dstHeight)
+            for (col in 0 until dstWidth) {
+                val sourceX = clampedSourcePosition(col, cropWidth, dstWidth)
+                val sourceCol0 = sourceX shr 16
+                val sourceCol1 = minOf(sourceCol0 + 1, cropWidth - 1)
+                val weightX = (sourceX and 0xffff) shr 8
+                val top = (rowY0[sourceCol0].toInt() and 0xff) * (256 - weightX) +
+                    (rowY0[sourceCol1].toInt() and 0xff) * weightX
+                val bottom = (rowY1[sourceCol0].toInt() and 0xff) * (256 - weightX) +
+                    (rowY1[sourceCol1].toInt() and 0xff) * weightX
+                val luma = (top * (256 - weightY) + bottom * weightY + 32768) shr 16
+                val nearestCol = if (weightX < 128) sourceCol0 else sourceCol1
+                val chromaCol = ((cropX + nearestCol) shr 1) - chromaStart
+                dst[offset] = yuvToArgb(
+                    luma,
+                    rowU[chromaCol].toInt() and 0xff,
+                    rowV[chromaCol].toInt() and 0xff
+                )
+                offset += columnStep
+            }
+        }
+    }
+    pool.release(rowV)
+    pool.release(rowU)
+    pool.release(rowY1)
+    pool.release(rowY0)
+}
+
+/**
+ * Maps output pixel [index] to the position of its centre in a source of [sourceSize] pixels as
+ * 16.16 fixed point, clamped to the first and last source pixel.
+ */
+private fun clampedSourcePosition(index: Int, sourceSize: Int, dstSize: Int): Int {
+    val position = ((2L * index + 1) * sourceSize shl 15) / dstSize - 32768
+    return position.coerceIn(0L, (sourceSize - 1).toLong() shl 16).toInt()
+}
@@ -0,0 +1,230 @@
+@file:JvmName("I420Utils")
+package com.twilio.video.examples.common
+
+import java.nio.ByteBuffer
+
+/**
+ * Width of the chroma planes of an I420 frame. Odd widths round up.
+ */
+internal fun chromaWidth(width: Int) = (width + 1) / 2
+
+/**
+ * Height of the chroma planes of an I420 frame. Odd heights round up.
+ */
+internal fun chromaHeight(height: Int) = (height + 1) / 2
+
+/**
+ * Number of bytes needed to hold a [width] x [height] frame in NV21 or NV12 layout.
+ */
+internal fun nv21Size(width: Int, height: Int) =
+    width * height + chromaWidth(width) * 2 * chromaHeight(height)
+
+/**
+ * Number of bytes needed to hold a [width] x [height] I420 frame with tightly packed planes.
+ */
+internal fun i420Size(width: Int, height: Int) = nv21Size(width, height)
+
+/**
+ * Row strides of the Y and interleaved VU planes written by [i420ToNv21].
+ */
+internal fun nv21Strides(width: Int) = intArrayOf(width, chromaWidth(width) * 2)
+
+/**
+ * Packs I420 planes into [dst] using the NV21 layout. A tightly strided Y plane is copied with a
+ * single bulk read, while padded planes are copied a row at a time with bulk reads that skip the
+ * padding. The chroma planes are read a row at a time into scratch rows acquired from [pool] and
+ * interleaved from there, so no per pixel buffer reads take place.
+ *
+ * [dst] must hold at least [nv21Size] bytes.
+ */
+internal fun i420ToNv21(
+    srcY: ByteBuffer,
+    strideY: Int,
+    srcU: ByteBuffer,
+    strideU: Int,
+    srcV: ByteBuffer,
+    strideV: Int,
+    dst: ByteArray,
+    width: Int,
+    height: Int,
+    pool: ByteArrayPool
+) {
+    val chromaWidth = chromaWidth(width)
+    val chromaHeight = chromaHeight(height)
+    val lumaSize = width * height
+    require(dst.size >= nv21Size(width, height)) { "Destination is too small" }
+
+    if (strideY == width) {
+        srcY.position(0)
+        srcY.get(dst, 0, lumaSize)
+    } else {
+        for (row in 0 until height) {
+            srcY.position(row * strideY)
+            srcY.get(dst, row * width, width)
+        }
+    }
+
+    val rowU = pool.acquire(chromaWidth)
+    val rowV = pool.acquire(chromaWidth)
+    var offset = lumaSize
+    for (row in 0 until chromaHeight) {
+        readRow(srcU, row * strideU, rowU, chromaWidth)
+        readRow(srcV, row * strideV, rowV, chromaWidth)
+        for (col in 0 until chromaWidth) {
+            dst[offset++] = rowV[col]
+            dst[offset++] = rowU[col]
+        }
+    }
+    pool.release(rowV)
+    pool.release(rowU)
+}
+
+/**
+ * Packs I420 planes into [dst] using the NV21 layout while rotating the image clockwise by
+ * [rotation] degrees, so 90 and 270 degree frames produce a [height] x [width] image. Rows are
+ * read with bulk copies into scratch rows acquired from [pool] and scattered to their rotated
+ * positions.
+ *
+ * [dst] must hold at least [nv21Size] bytes.
+ */
+internal fun i420ToNv21Rotated(
+    srcY: ByteBuffer,
+    strideY: Int,
+    srcU: ByteBuffer,
+    strideU: Int,
+    srcV: ByteBuffer,
+    strideV: Int,
+    dst: ByteArray,
+    width: Int,
+    height: Int,
+    rotation: Int,
+    pool: ByteArrayPool
+) {
+    val chromaWidth = chromaWidth(width)
+    val chromaHeight = chromaHeight(height)
+    val lumaSize = width * height
+    require(dst.size >= nv21Size(width, height)) { "Destination is too small" }
+    val lumaStep = columnStep(rotation, height)
+    val chromaStep = columnStep(rotation, chromaHeight)
+
+    val rowY = pool.acquire(width)
+    for (row in 0 until height) {
+        readRow(srcY, row * strideY, rowY, width)
+        var offset = rotatedRowOffset(rotation, row, width, height)
+        for (col in 0 until width) {
+            dst[offset] = rowY[col]
+            offset += lumaStep
+        }
+    }
+    pool.release(rowY)
+
+    val rowU = pool.acquire(chromaWidth)
+    val rowV = pool.acquire(chromaWidth)
+    for (row in 0 until chromaHeight) {
+        readRow(srcU, row * strideU, rowU, chromaWidth)
+        readRow(srcV, row * strideV, rowV, chromaWidth)
+        var offset = rotatedRowOffset(rotation, row, chromaWidth, chromaHeight)
+        for (col in 0 until chromaWidth) {
+            val index = lumaSize + offset * 2
+            dst[index] = rowV[col]
+            dst[index + 1] = rowU[col]
+            offset += chromaStep
+        }
+    }
+    pool.release(rowV)
+    pool.release(rowU)
+}
+
+/**
+ * Writes I420 planes into [dst] as NV12, or as NV21 when [vuOrder] is true, starting at its
+ * current position and advancing it past the written bytes. The Y plane is transferred buffer to
+ * buffer without staging. Chroma is interleaved a row at a time in scratch rows acquired from
+ * [pool] and written with one bulk put per row.
+ */
+internal fun i420ToSemiPlanar(
+    srcY: ByteBuffer,
+    strideY: Int,
+    srcU: ByteBuffer,
+    strideU: Int,
+    srcV: ByteBuffer,
+    strideV: Int,
+    dst: ByteBuffer,
+    width: Int,
+    height: Int,
+    vuOrder: Boolean,
+    pool: ByteArrayPool
+) {
+    val chromaWidth = chromaWidth(width)
+    val chromaHeight = chromaHeight(height)
+    val requiredBytes = nv21Size(width, height)
+    require(dst.remaining() >= requiredBytes) {
+        "Destination has ${dst.remaining()} bytes remaining but $requiredBytes are required"
+    }
+
+    putPlane(srcY, strideY, dst, width, height)
+
+    val rowU = pool.acquire(chromaWidth)
+    val rowV = pool.acquire(chromaWidth)
+    val rowUV = pool.acquire(chromaWidth * 2)
+    val first = if (vuOrder) rowV else rowU
+    val second = if (vuOrder) rowU else rowV
+    for (row in 0 until chromaHeight) {
+        readRow(srcU, row * strideU, rowU, chromaWidth)
+        readRow(srcV, row * strideV, rowV, chromaWidth)
+        var offset = 0
+        for (col in 0 until chromaWidth) {
+            rowUV[offset++] = first[col]
+            rowUV[offset++] = second[col]
+        }
+        dst.put(rowUV, 0, chromaWidth * 2)
+    }
+    pool.release(rowUV)
+    pool.release(rowV)
+    pool.release(rowU)
+}
+
+/**
+ * Writes I420 planes into [dst] with their padding removed, starting at its current position and
+ * advancing it past the written bytes. Every plane is transferred buffer to buffer, so nothing is
+ * staged or allocated.
+ */
+internal fun i420ToPacked(
+    srcY: ByteBuffer,
+    strideY: Int,
+    srcU: ByteBuffer,
+    strideU: Int,
+    srcV: ByteBuffer,
+    strideV: Int,
+    dst: ByteBuffer,
+    width: Int,
+    height: Int
+) {
+    val chromaWidth = chromaWidth(width)
+    val chromaHeight = chromaHeight(height)
+    val requiredBytes = i420Size(width, height)
+    require(dst.remaining() >= requiredBytes) {
+        "Destination has ${dst.remaining()} bytes remaining but $requiredBytes are required"
+    }
+
+    putPlane(srcY, strideY, dst, width, height)
+    putPlane(srcU, strideU, dst, chromaWidth, chromaHeight)
+    putPlane(srcV, strideV, dst, chromaWidth, chromaHeight)
+}
+
+/**
+ * Transfers [rows] rows of [width] bytes from [src] to [dst], skipping any stride padding. The
+ * source limit is restored afterwards.
+ */
+private fun putPlane(src: ByteBuffer, stride: Int, dst: ByteBuffer, width: Int, rows: Int) {
+    val limit = src.limit()
+    if (stride == width) {
+        src.limit(width * rows).position(0)
+        dst.put(src)
+    } else {
+        for (row in 0 until rows) {
+            src.limit(row * stride + width).position(row * stride)
+            dst.put(src)
+        }
+    }
+    src.limit(limit)
+}
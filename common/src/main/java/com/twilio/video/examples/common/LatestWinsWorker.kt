@@ -0,0 +1,63 @@
+package com.twilio.video.examples.common
+
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.RejectedExecutionException
+import java.util.concurrent.atomic.AtomicReference
+
+/**
+ * Hands items from a producer, such as a render or capture thread, to a dedicated worker thread
+ * through a single slot. [offer] never blocks: an item that is still waiting when a newer one
+ * arrives is replaced and passed to [onDropped], so at most one item and one pending task are
+ * ever queued and the worker always [process]es the latest one.
+ *
+ * [onDropped] runs on whichever thread displaced the item. Call [release] to stop the worker;
+ * a waiting item is dropped and later offers are dropped immediately.
+ */
+class LatestWinsWorker<T : Any> internal constructor(
+    private val executor: ExecutorService,
+    private val onDropped: (T) -> Unit,
+    private val process: (T) -> Unit
+) {
+    private val slot = AtomicReference<T?>(null)
+    private val drain = Runnable {
+        slot.getAndSet(null)?.let(process)
+    }
+
+    constructor(
+        name: String,
+        onDropped: (T) -> Unit,
+        process: (T) -> Unit
+    ) : this(
+        Executors.newSingleThreadExecutor { runnable ->
+            Thread(runnable, name).apply { isDaemon = true }
+        },
+        onDropped,
+        process
+    )
+
+    /**
+     * Makes [item] the next item to process, dropping any item still waiting.
+     */
+    fun offer(item: T) {
+        // A waiting item means its drain has not run yet and will pick up this one instead
+        val waiting = slot.getAndSet(item)
+        if (waiting != null) {
+            onDropped(waiting)
+            return
+        }
+        try {
+            executor.execute(drain)
+        } catch (e: RejectedExecutionException) {
+            slot.getAndSet(null)?.let(onDropped)
+        }
+    }
+
+    /**
+     * Stops the worker once the item in progress, if any, has been processed.
+     */
+    fun release() {
+        executor.shutdown()
+        slot.getAndSet(null)?.let(onDropped)
+    }
+}
@@ -0,0 +1,136 @@
+package com.twilio.video.examples.common
+
+import java.nio.ByteBuffer
+import kotlin.math.abs
+import tvi.webrtc.VideoFrame
+import tvi.webrtc.VideoSink
+
+/**
+ * Receives the events of a [MotionDetectorSink] on the thread delivering frames, so
+ * implementations should return quickly.
+ */
+interface MotionListener {
+    /**
+     * Invoked when motion starts, with [moving] set, and when it stops again.
+     */
+    fun onMotionChanged(moving: Boolean, score: Float) {}
+
+    /**
+     * Invoked when consecutive frames barely resemble each other, such as after a camera switch.
+     */
+    fun onSceneChange(score: Float) {}
+}
+
+/**
+ * A [VideoSink] that detects motion and scene changes by sampling the Y plane of each frame on a
+ * coarse grid and comparing it with the previous frame. No frame is converted to a bitmap and the
+ * sample grids are allocated once, so I420 frames, such as those of remote tracks, are analysed
+ * without any per frame allocation. Frames in other formats are read through
+ * [VideoFrame.Buffer.toI420] first, which copies the whole frame, so tracks of texture frames, such
+ * as local camera tracks, are best fed through a [ThrottledVideoSink].
+ *
+ * The difference score is the mean absolute luma difference of the samples, from 0 to 255. Motion
+ * starts once the smoothed score exceeds [motionThreshold] and stops when it falls below half of
+ * it, while a single frame scoring above [sceneChangeThreshold] is reported as a scene change.
+ */
+class MotionDetectorSink(
+    private val motionListener: MotionListener,
+    private val motionThreshold: Float = DEFAULT_MOTION_THRESHOLD,
+    private val sceneChangeThreshold: Float = DEFAULT_SCENE_CHANGE_THRESHOLD,
+    gridWidth: Int = DEFAULT_GRID_WIDTH,
+    gridHeight: Int = DEFAULT_GRID_HEIGHT
+) : VideoSink {
+    private val detector = LumaMotionDetector(gridWidth, gridHeight)
+    private var moving = false
+
+    /**
+     * The smoothed difference score of the latest frames.
+     */
+    @Volatile var motionScore = 0f
+        private set
+
+    override fun onFrame(videoFrame: VideoFrame) {
+        val buffer = videoFrame.buffer
+        val i420Buffer = buffer as? VideoFrame.I420Buffer ?: buffer.toI420()
+        val score = detector.difference(
+            i420Buffer.dataY,
+            i420Buffer.strideY,
+            i420Buffer.width,
+            i420Buffer.height
+        )
+        if (i420Buffer !== buffer) {
+            i420Buffer.release()
+        }
+        if (score < 0) {
+            return
+        }
+
+        if (score > sceneChangeThreshold) {
+            // A cut is not motion, so start afresh from the new scene
+            motionScore = 0f
+            motionListener.onSceneChange(score)
+        } else {
+            motionScore += (score - motionScore) / SMOOTHING
+        }
+
+        val nowMoving = if (moving) {
+            motionScore > motionThreshold / 2
+        } else {
+            motionScore > motionThreshold
+        }
+        if (nowMoving != moving) {
+            moving = nowMoving
+            motionListener.onMotionChanged(moving, motionScore)
+        }
+    }
+
+    companion object {
+        const val DEFAULT_MOTION_THRESHOLD = 4f
+        const val DEFAULT_SCENE_CHANGE_THRESHOLD = 40f
+        const val DEFAULT_GRID_WIDTH = 32
+        const val DEFAULT_GRID_HEIGHT = 18
+        private const val SMOOTHING = 4
+    }
+}
+
+/**
+ * Samples luma planes on a [gridWidth] x [gridHeight] grid and scores each frame against the
+ * previous one. Only the two sample grids are allocated, once.
+ */
+internal class LumaMotionDetector(private val gridWidth: Int, private val gridHeight: Int) {
+    private var previous = IntArray(gridWidth * gridHeight)
+    private var current = IntArray(gridWidth * gridHeight)
+    private var previousWidth = 0
+    private var previousHeight = 0
+
+    init {
+        require(gridWidth > 0 && gridHeight > 0) { "The grid must have at least one sample" }
+    }
+
+    /**
+     * Samples [dataY] and returns the mean absolute difference from the previous frame, or -1 if
+     * there is no previous frame of the same size to compare with.
+     */
+    fun difference(dataY: ByteBuffer, strideY: Int, width: Int, height: Int): Float {
+        var index = 0
+        var totalDifference = 0L
+        for (row in 0 until gridHeight) {
+            val offset = (row * 2 + 1) * height / (gridHeight * 2) * strideY
+            for (col in 0 until gridWidth) {
+                val luma = dataY.get(offset + (col * 2 + 1) * width / (gridWidth * 2)).toInt() and
+                    0xff
+                current[index] = luma
+                totalDifference += abs(luma - previous[index])
+                index++
+            }
+        }
+
+        val comparable = width == previousWidth && height == previousHeight
+        previousWidth = width
+        previousHeight = height
+        val swap = previous
+        previous = current
+        current = swap
+        return if (comparable) totalDifference.toFloat() / index else -1f
+    }
+}
@@ -0,0 +1,161 @@
+package com.twilio.video.examples.common
+
+import tvi.webrtc.VideoFrame
+import tvi.webrtc.VideoProcessor
+import tvi.webrtc.VideoSink
+
+/**
+ * A [VideoProcessor] that runs captured frames through an ordered list of lightweight [Stage]s
+ * before adapting them and forwarding them to the sink set by the video source.
+ *
+ * Each frame is retained once for the whole chain, so stages that only look at a frame do not pay
+ * for their own reference counting. Every stage sees the unadapted frame, and the adaptation
+ * requested by the source is applied once after the last stage. The time spent in each stage is
+ * recorded and can be read with [stageTimings].
+ */
+class ProcessorChain(vararg stages: Stage) : VideoProcessor {
+    private val stages = stages.toList()
+    @Volatile private var sink: VideoSink? = null
+
+    /**
+     * A step of a [ProcessorChain]. Stages are invoked on the capturer thread and should return
+     * quickly, since every frame waits for them.
+     */
+    abstract class Stage(val name: String) {
+        @Volatile internal var frames = 0L
+        @Volatile internal var totalNs = 0L
+        @Volatile internal var maxNs = 0L
+
+        open fun onCapturerStarted(success: Boolean) {}
+        open fun onCapturerStopped() {}
+    }
+
+    /**
+     * A stage that inspects frames, for example to gather statistics. The frame is only valid for
+     * the duration of [onFrame] and must not be retained.
+     */
+    abstract class Observer(name: String) : Stage(name) {
+        abstract fun onFrame(videoFrame: VideoFrame)
+    }
+
+    /**
+     * A stage that changes frames. [filter] either modifies the pixels of a writable frame in place
+     * and returns it, or returns a new frame that the chain takes ownership of and releases once
+     * the following stages are done with it.
+     */
+    abstract class Filter(name: String) : Stage(name) {
+        abstract fun filter(videoFrame: VideoFrame): VideoFrame
+    }
+
+    /**
+     * A stage that hands frames to other threads, for example to save pictures. A tap that keeps a
+     * frame beyond [onFrame] must retain it and release it once done.
+     */
+    abstract class Tap(name: String) : Stage(name) {
+        abstract fun onFrame(videoFrame: VideoFrame)
+    }
+
+    /**
+     * Time spent by a stage since the chain was created or [resetTimings] was called.
+     */
+    data class StageTiming(
+        val name: String,
+        val frames: Long,
+        val averageNs: Long,
+        val maxNs: Long
+    )
+
+    override fun setSink(videoSink: VideoSink?) {
+        sink = videoSink
+    }
+
+    override fun onCapturerStarted(success: Boolean) {
+        stages.forEach { it.onCapturerStarted(success) }
+    }
+
+    override fun onCapturerStopped() {
+        stages.forEach { it.onCapturerStopped() }
+    }
+
+    override fun onFrameCaptured(frame: VideoFrame?) {
+        onFrameCaptured(frame, null)
+    }
+
+    override fun onFrameCaptured(
+        videoFrame: VideoFrame?,
+        parameters: VideoProcessor.FrameAdaptationParameters?
+    ) {
+        requireNotNull(videoFrame)
+        videoFrame.retain()
+        var frame: VideoFrame = videoFrame
+        try {
+            for (stage in stages) {
+                frame = runStage(stage, frame, videoFrame)
+            }
+
+            val adaptedFrame = if (parameters != null) {
+                VideoProcessor.applyFrameAdaptationParameters(frame, parameters)
+            } else {
+                frame.also { it.retain() }
+            }
+            adaptedFrame?.let {
+                sink?.onFrame(it)
+                it.release()
+            }
+        } finally {
+            if (frame !== videoFrame) {
+                frame.release()
+            }
+            videoFrame.release()
+        }
+    }
+
+    /**
+     * Returns the time spent in each stage, in chain order.
+     */
+    fun stageTimings(): List<StageTiming> = stages.map { stage ->
+        val frames = stage.frames
+        StageTiming(
+            stage.name,
+            frames,
+            if (frames > 0) stage.totalNs / frames else 0,
+            stage.maxNs
+        )
+    }
+
+    /**
+     * Clears the recorded stage timings. Intended to be called while frames are not flowing, as
+     * a frame in progress may be recorded before or after the reset.
+     */
+    fun resetTimings() {
+        stages.forEach {
+            it.frames = 0
+            it.totalNs = 0
+            it.maxNs = 0
+        }
+    }
+
+    private fun runStage(stage: Stage, frame: VideoFrame, capturedFrame: VideoFrame): VideoFrame {
+        val startNs = System.nanoTime()
+        var result = frame
+        when (stage) {
+            is Observer -> stage.onFrame(frame)
+            is Tap -> stage.onFrame(frame)
+            is Filter -> {
+                result = stage.filter(frame)
+                if (result !== frame && frame !== capturedFrame) {
+                    frame.release()
+                }
+            }
+        }
+        val elapsedNs = System.nanoTime() - startNs
+
+        // Only the capturer thread writes the timings
+        stage.frames++
+        stage.totalNs += elapsedNs
+        if (elapsedNs > stage.maxNs) {
+            stage.maxNs = elapsedNs
+        }
+        return result
+    }
+}
@@ -0,0 +1,105 @@
+@file:JvmName("RgbaToI420")
+package com.twilio.video.examples.common
+
+import java.nio.ByteBuffer
+
+/*
+ * Fixed point BT.601 video range coefficients scaled by 2^8, as used by libyuv. The rounding and
+ * offset terms are folded into a single constant per channel.
+ */
+private const val RGB_SHIFT = 8
+private const val Y_BIAS = (16 shl RGB_SHIFT) + 128
+private const val UV_BIAS = (128 shl RGB_SHIFT) + 128
+internal const val RGBA_BYTES_PER_PIXEL = 4
+
+/**
+ * Converts RGBA_8888 pixels, as written by [android.graphics.Bitmap.copyPixelsToBuffer], to I420
+ * planes. Alpha is ignored. Each chroma sample is computed from the average colour of its 2x2
+ * block, with the last column or row repeated for odd sizes.
+ *
+ * Two source rows at a time are read with bulk copies into scratch rows acquired from [pool],
+ * and every output row is assembled in a scratch row and written with one bulk put, so no per
+ * pixel buffer access takes place. The positions of the destination buffers are changed.
+ */
+internal fun rgbaToI420(
+    src: ByteBuffer,
+    srcStride: Int,
+    dstY: ByteBuffer,
+    strideY: Int,
+    dstU: ByteBuffer,
+    strideU: Int,
+    dstV: ByteBuffer,
+    strideV: Int,
+    width: Int,
+    height: Int,
+    pool: ByteArrayPool
+) {
+    val rowBytes = width * RGBA_BYTES_PER_PIXEL
+    val chromaWidth = chromaWidth(width)
+    val top = pool.acquire(rowBytes)
+    val bottom = pool.acquire(rowBytes)
+    val rowY = pool.acquire(width)
+    val rowU = pool.acquire(chromaWidth)
+    val rowV = pool.acquire(chromaWidth)
+
+    for (row in 0 until height step 2) {
+        readRow(src, row * srcStride, top, rowBytes)
+        rgbaToLumaRow(top, rowY, width)
+        writeRow(dstY, row * strideY, rowY, width)
+
+        // The last row of an odd height frame is its own neighbour
+        val second = if (row + 1 < height) {
+            readRow(src, (row + 1) * srcStride, bottom, rowBytes)
+            rgbaToLumaRow(bottom, rowY, width)
+            writeRow(dstY, (row + 1) * strideY, rowY, width)
+            bottom
+        } else {
+            top
+        }
+
+        for (col in 0 until chromaWidth) {
+            val left = col * 2 * RGBA_BYTES_PER_PIXEL
+            val right = if (col * 2 + 1 < width) left + RGBA_BYTES_PER_PIXEL else left
+            val r = average(top, second, left, right)
+            val g = average(top, second, left + 1, right + 1)
+            val b = average(top, second, left + 2, right + 2)
+            rowU[col] = ((-38 * r - 74 * g + 112 * b + UV_BIAS) shr RGB_SHIFT).toByte()
+            rowV[col] = ((112 * r - 94 * g - 18 * b + UV_BIAS) shr RGB_SHIFT).toByte()
+        }
+        writeRow(dstU, row / 2 * strideU, rowU, chromaWidth)
+        writeRow(dstV, row / 2 * strideV, rowV, chromaWidth)
+    }
+
+    pool.release(rowV)
+    pool.release(rowU)
+    pool.release(rowY)
+    pool.release(bottom)
+    pool.release(top)
+}
+
+private fun rgbaToLumaRow(rgba: ByteArray, dst: ByteArray, width: Int) {
+    var offset = 0
+    for (col in 0 until width) {
+        val r = rgba[offset].toInt() and 0xff
+        val g = rgba[offset + 1].toInt() and 0xff
+        val b = rgba[offset + 2].toInt() and 0xff
+        dst[col] = ((66 * r + 129 * g + 25 * b + Y_BIAS) shr RGB_SHIFT).toByte()
+        offset += RGBA_BYTES_PER_PIXEL
+    }
+}
+
+/**
+ * Rounded average of the channel at [left] and [right] in both rows.
+ */
+@Suppress("NOTHING_TO_INLINE")
+private inline fun average(top: ByteArray, bottom: ByteArray, left: Int, right: Int): Int =
+    ((top[left].toInt() and 0xff) + (top[right].toInt() and 0xff) +
+        (bottom[left].toInt() and 0xff) + (bottom[right].toInt() and 0xff) + 2) shr 2
+
+/**
+ * Copies [length] bytes from the start of [src] into [dst] starting at [offset].
+ */
+private fun writeRow(dst: ByteBuffer, offset: Int, src: ByteArray, length: Int) {
+    dst.position(offset)
+    dst.put(src, 0, length)
+}
@@ -0,0 +1,82 @@
+package com.twilio.video.examples.common
+
+import java.nio.ByteBuffer
+import tvi.webrtc.JavaI420Buffer
+import tvi.webrtc.VideoFrame
+
+/**
+ * Converts RGBA_8888 pixels, such as those copied out of a [android.graphics.Bitmap], into I420
+ * buffers that can be delivered to a [tvi.webrtc.CapturerObserver] directly. This lets a capturer
+ * choose the thread that pays for the conversion instead of leaving it to the SDK.
+ *
+ * Each I420 buffer is backed by a direct buffer from a pool that it returns to once released, so
+ * a capturer producing frames of a steady size stops allocating frame memory after the first few
+ * frames. A converter may be used from one thread at a time.
+ */
+class RgbaToI420Converter(maxPooledFrames: Int = DEFAULT_MAX_POOLED_FRAMES) {
+    private val framePool = DirectByteBufferPool(maxSizes = 1, maxPerSize = maxPooledFrames)
+    private val rowPool = ByteArrayPool()
+
+    /**
+     * Converts the [width] x [height] RGBA pixels in [rgba], whose rows are [rgbaStride] bytes
+     * apart, to a new I420 buffer. The caller owns the returned buffer and must release it.
+     */
+    fun convert(
+        rgba: ByteBuffer,
+        rgbaStride: Int,
+        width: Int,
+        height: Int
+    ): VideoFrame.I420Buffer {
+        require(rgbaStride >= width * RGBA_BYTES_PER_PIXEL) { "The stride is too small" }
+        val chromaWidth = chromaWidth(width)
+        val chromaHeight = chromaHeight(height)
+        val lumaSize = width * height
+        val chromaSize = chromaWidth * chromaHeight
+        val frame = framePool.acquire(i420Size(width, height))
+        val dataY = plane(frame, 0, lumaSize)
+        val dataU = plane(frame, lumaSize, chromaSize)
+        val dataV = plane(frame, lumaSize + chromaSize, chromaSize)
+
+        rgbaToI420(
+            rgba, rgbaStride,
+            dataY, width,
+            dataU, chromaWidth,
+            dataV, chromaWidth,
+            width, height, rowPool
+        )
+        dataY.rewind()
+        dataU.rewind()
+        dataV.rewind()
+
+        return JavaI420Buffer.wrap(
+            width, height,
+            dataY, width,
+            dataU, chromaWidth,
+            dataV, chromaWidth,
+            Runnable { framePool.release(frame) }
+        )
+    }
+
+    /**
+     * Drops the pooled frame memory, for example once the capturer using this converter is
+     * disposed. Buffers still held are returned to the emptied pool when released.
+     */
+    fun clear() {
+        framePool.clear()
+        rowPool.clear()
+    }
+
+    private fun plane(frame: ByteBuffer, offset: Int, size: Int): ByteBuffer {
+        frame.limit(offset + size).position(offset)
+        val plane = frame.slice()
+        frame.clear()
+        return plane
+    }
+
+    companion object {
+        /**
+         * Enough for a frame being converted and a couple still held by the encoder.
+         */
+        const val DEFAULT_MAX_POOLED_FRAMES = 3
+    }
+}
@@ -0,0 +1,60 @@
+package com.twilio.video.examples.common
+
+import java.util.concurrent.TimeUnit
+import tvi.webrtc.VideoFrame
+import tvi.webrtc.VideoSink
+
+/**
+ * A [VideoSink] that forwards frames to [delegate] at no more than [maxFramesPerSecond], which
+ * saves the upload and composition work of renderers too small to benefit from the full frame
+ * rate, such as thumbnails.
+ *
+ * Frames are picked by their timestamps on a fixed schedule, so the forwarded rate stays steady
+ * regardless of when frames arrive. Frames that are not forwarded are dropped without being
+ * retained.
+ */
+class ThrottledVideoSink(
+    private val delegate: VideoSink,
+    maxFramesPerSecond: Int
+) : VideoSink {
+    private val frameIntervalNs: Long
+    private val toleranceNs: Long
+    private var nextFrameNs = UNSCHEDULED
+
+    init {
+        require(maxFramesPerSecond > 0) { "The maximum frame rate must be positive" }
+        frameIntervalNs = TimeUnit.SECONDS.toNanos(1) / maxFramesPerSecond
+        toleranceNs = frameIntervalNs / JITTER_TOLERANCE_DIVISOR
+    }
+
+    override fun onFrame(videoFrame: VideoFrame) {
+        val timestampNs = videoFrame.timestampNs
+        if (nextFrameNs != UNSCHEDULED &&
+            timestampNs < nextFrameNs - toleranceNs &&
+            timestampNs >= nextFrameNs - frameIntervalNs
+        ) {
+            return
+        }
+
+        // Keep to the schedule unless the stream paused or its timestamps jumped back
+        nextFrameNs = if (nextFrameNs == UNSCHEDULED ||
+            timestampNs < nextFrameNs - frameIntervalNs ||
+            timestampNs >= nextFrameNs + frameIntervalNs
+        ) {
+            timestampNs + frameIntervalNs
+        } else {
+            nextFrameNs + frameIntervalNs
+        }
+        delegate.onFrame(videoFrame)
+    }
+
+    private companion object {
+        const val UNSCHEDULED = Long.MIN_VALUE
+
+        /**
+         * Frames arriving up to a quarter of an interval early are forwarded, so capture jitter
+         * does not make the throttle skip a whole source frame.
+         */
+        const val JITTER_TOLERANCE_DIVISOR = 4
+    }
+}
@@ -0,0 +1,187 @@
+package com.twilio.video.examples.common
+
+import android.graphics.Bitmap
+import android.util.LruCache
+import java.nio.ByteBuffer
+import java.util.concurrent.TimeUnit
+import kotlin.math.max
+import kotlin.math.roundToInt
+import tvi.webrtc.VideoFrame
+import tvi.webrtc.VideoSink
+
+typealias ThumbnailListener = (participantSid: String, thumbnail: Bitmap) -> Unit
+
+/**
+ * A cache of small, upright still images of participants, keyed by participant SID, so lists of
+ * participants can show recent previews without a [com.twilio.video.VideoView] each.
+ *
+ * Each remote video track feeds the cache through the sink returned by [sinkFor]. The sink hashes
+ * a few luma samples of every frame and only converts a frame into a new thumbnail when the hash
+ * differs from the cached image by more than [hashThreshold] bits, at most once per
+ * [minRefreshMs]. Thumbnails are evicted least recently used first once their bitmaps exceed
+ * [byteBudget] bytes.
+ */
+class ThumbnailCache(
+    byteBudget: Int = DEFAULT_BYTE_BUDGET,
+    private val thumbnailSize: Int = DEFAULT_THUMBNAIL_SIZE,
+    private val hashThreshold: Int = DEFAULT_HASH_THRESHOLD,
+    private val minRefreshMs: Long = DEFAULT_MIN_REFRESH_MS,
+    private val thumbnailListener: ThumbnailListener? = null
+) {
+    private val thumbnails = object : LruCache<String, Bitmap>(byteBudget) {
+        override fun sizeOf(key: String, value: Bitmap) = value.byteCount
+    }
+
+    /**
+     * Returns the latest thumbnail of a participant, or null if there is none.
+     */
+    operator fun get(participantSid: String): Bitmap? = thumbnails.get(participantSid)
+
+    /**
+     * Returns a sink that keeps the thumbnail of [participantSid] up to date. Add it to the
+     * participant's video track and remove it when the track is unsubscribed. [thumbnailListener]
+     * is invoked on the thread delivering the track's frames.
+     */
+    fun sinkFor(participantSid: String): VideoSink = ThumbnailSink(participantSid)
+
+    /**
+     * Forgets the thumbnail of a participant, for example once they leave.
+     */
+    fun remove(participantSid: String) {
+        thumbnails.remove(participantSid)
+    }
+
+    fun clear() {
+        thumbnails.evictAll()
+    }
+
+    private inner class ThumbnailSink(private val participantSid: String) : VideoSink {
+        private val refreshPolicy = ThumbnailRefreshPolicy(hashThreshold, minRefreshMs)
+
+        override fun onFrame(videoFrame: VideoFrame) {
+            if (!refreshPolicy.isDue(videoFrame.timestampNs)) {
+                return
+            }
+            val hasThumbnail = thumbnails.get(participantSid) != null
+
+            val buffer = videoFrame.buffer
+            val i420Buffer = buffer as? VideoFrame.I420Buffer ?: buffer.toI420()
+            try {
+                val hash = lumaHash(
+                    i420Buffer.dataY,
+                    i420Buffer.strideY,
+                    i420Buffer.width,
+                    i420Buffer.height
+                )
+                if (refreshPolicy.shouldRefresh(hash, hasThumbnail)) {
+                    refresh(i420Buffer, videoFrame, hash)
+                }
+            } finally {
+                if (i420Buffer !== buffer) {
+                    i420Buffer.release()
+                }
+            }
+        }
+
+        private fun refresh(i420Buffer: VideoFrame.I420Buffer, videoFrame: VideoFrame, hash: Long) {
+            val transposed = videoFrame.rotatedWidth != i420Buffer.width
+            val scale = thumbnailSize.toFloat() / max(i420Buffer.width, i420Buffer.height)
+            val scaledWidth = max(1, (i420Buffer.width * scale).roundToInt())
+            val scaledHeight = max(1, (i420Buffer.height * scale).roundToInt())
+
+            // Convert the I420 buffer, so texture frames are not read back a second time
+            i420Buffer.retain()
+            val i420Frame = VideoFrame(i420Buffer, videoFrame.rotation, videoFrame.timestampNs)
+            val thumbnail = i420Frame.toBitmap(
+                if (transposed) scaledHeight else scaledWidth,
+                if (transposed) scaledWidth else scaledHeight
+            )
+            i420Frame.release()
+
+            thumbnail?.let {
+                refreshPolicy.onRefreshed(hash, videoFrame.timestampNs)
+                thumbnails.put(participantSid, it)
+                thumbnailListener?.invoke(participantSid, it)
+            }
+        }
+    }
+
+    companion object {
+        /**
+         * Enough for about a hundred 160 x 90 thumbnails.
+         */
+        const val DEFAULT_BYTE_BUDGET = 6 * 1024 * 1024
+        const val DEFAULT_THUMBNAIL_SIZE = 160
+        const val DEFAULT_HASH_THRESHOLD = 6
+        const val DEFAULT_MIN_REFRESH_MS = 1_000L
+    }
+}
+
+/**
+ * Decides when a [ThumbnailCache] sink refreshes its thumbnail. A sink that has not refreshed yet
+ * replaces whatever thumbnail is cached, which may come from an earlier subscription of the same
+ * participant. After that, frames are hashed at most once per [minRefreshMs] and a thumbnail is
+ * only replaced when the hash differs by more than [hashThreshold] bits, or when it has been
+ * evicted. Eviction never shortens the interval, so a cache too small for the room cannot make
+ * its sinks rebuild thumbnails on every frame.
+ */
+internal class ThumbnailRefreshPolicy(private val hashThreshold: Int, minRefreshMs: Long) {
+    private val minRefreshNs = TimeUnit.MILLISECONDS.toNanos(minRefreshMs)
+    private var thumbnailHash = 0L
+    private var lastRefreshNs = NEVER_REFRESHED
+
+    /**
+     * Whether a frame at [timestampNs] should be hashed. Timestamps that jumped back count as due.
+     */
+    fun isDue(timestampNs: Long): Boolean {
+        return lastRefreshNs == NEVER_REFRESHED ||
+            timestampNs < lastRefreshNs ||
+            timestampNs - lastRefreshNs >= minRefreshNs
+    }
+
+    /**
+     * Whether a frame with [hash] differs enough from the thumbnail to replace it.
+     */
+    fun shouldRefresh(hash: Long, hasThumbnail: Boolean): Boolean {
+        return !hasThumbnail ||
+            lastRefreshNs == NEVER_REFRESHED ||
+            hashDistance(hash, thumbnailHash) > hashThreshold
+    }
+
+    fun onRefreshed(hash: Long, timestampNs: Long) {
+        thumbnailHash = hash
+        lastRefreshNs = timestampNs
+    }
+
+    private companion object {
+        const val NEVER_REFRESHED = Long.MIN_VALUE
+    }
+}
+
+/**
+ * A 64 bit difference hash of a luma plane: the plane is sampled on a 9 x 8 grid and each bit
+ * records whether a sample is brighter than its right neighbour. Similar images have hashes that
+ * differ in few bits, regardless of overall brightness.
+ */
+internal fun lumaHash(dataY: ByteBuffer, strideY: Int, width: Int, height: Int): Long {
+    var hash = 0L
+    for (row in 0 until HASH_ROWS) {
+        val offset = (row * 2 + 1) * height / (HASH_ROWS * 2) * strideY
+        var left = dataY.get(offset + width / (HASH_COLUMNS * 2)).toInt() and 0xff
+        for (col in 1 until HASH_COLUMNS) {
+            val right = dataY.get(offset + (col * 2 + 1) * width / (HASH_COLUMNS * 2)).toInt() and
+                0xff
+            hash = hash shl 1 or if (left > right) 1L else 0L
+            left = right
+        }
+    }
+    return hash
+}
+
+/**
+ * Number of bits that differ between two [lumaHash]es.
+ */
+internal fun hashDistance(first: Long, second: Long) = java.lang.Long.bitCount(first xor second)
+
+private const val HASH_ROWS = 8
+private const val HASH_COLUMNS = 9
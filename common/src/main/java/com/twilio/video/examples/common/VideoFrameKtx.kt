@@ -9,28 +9,298 @@ import android.graphics.Rect
 import android.graphics.YuvImage
 import android.os.Build
 import java.io.ByteArrayOutputStream
+import java.io.File
+import java.io.FileOutputStream
 import java.io.IOException
+import java.io.OutputStream
 import java.nio.ByteBuffer
+import java.nio.channels.Channels
+import java.nio.channels.WritableByteChannel
 import tvi.webrtc.VideoFrame
-import tvi.webrtc.YuvConverter
 
 /**
- * Converts a [tvi.webrtc.VideoFrame] to a Bitmap. This method must be called from a thread with a
- * valid EGL context when the frame buffer is a [VideoFrame.TextureBuffer].
+ * NV21 output buffers and scratch rows are recycled between conversions so repeated snapshots of
+ * the same track do not allocate a new frame sized array every time.
  */
-fun VideoFrame.toBitmap(): Bitmap? {
-    val i420Buffer = if (buffer is VideoFrame.TextureBuffer) {
-        val yuvConverter = YuvConverter()
-        val buffer = yuvConverter.convert(buffer as VideoFrame.TextureBuffer)
-        yuvConverter.release()
-        buffer
+private val byteArrayPool = ByteArrayPool()
+private val argbPixelPool = IntArrayPool()
+
+private const val DEFAULT_JPEG_QUALITY = 90
+
+/**
+ * The ways [toBitmap] can turn I420 pixels into a [Bitmap].
+ */
+enum class BitmapConversion {
+    /**
+     * Converts I420 straight to ARGB_8888 with fixed point arithmetic.
+     */
+    DIRECT,
+
+    /**
+     * Like [DIRECT], but large frames are split into row stripes that are converted concurrently
+     * on a small shared thread pool. Frames below 640x480 are converted on the calling thread.
+     */
+    PARALLEL,
+
+    /**
+     * Compresses the frame to a JPEG with [YuvImage] and decodes it again. Slower and lossy, but
+     * relies only on platform codecs.
+     */
+    JPEG
+}
+
+/**
+ * Converts a [tvi.webrtc.VideoFrame] to a Bitmap.
+ *
+ * With [BitmapConversion.DIRECT] and [BitmapConversion.PARALLEL] the frame rotation is applied
+ * while converting, so the upright bitmap is produced in one pass. When [reuseBitmap] is a mutable
+ * ARGB_8888 bitmap that matches the rotated frame dimensions, the pixels are written into it
+ * instead of a new bitmap.
+ */
+fun VideoFrame.toBitmap(
+    conversion: BitmapConversion = BitmapConversion.DIRECT,
+    reuseBitmap: Bitmap? = null
+): Bitmap? {
+    val i420Buffer = toI420Buffer()
+    if (conversion != BitmapConversion.JPEG) {
+        val parallel = conversion == BitmapConversion.PARALLEL
+        val bitmap = i420ToBitmap(i420Buffer, rotation, reuseBitmap, parallel)
+        i420Buffer.release()
+        return bitmap
+    }
+    val bitmap = i420ToBitmapViaJpeg(i420Buffer)
+    i420Buffer.release()
+    if (bitmap == null || rotation == 0) {
+        return bitmap
+    }
+    val matrix = Matrix()
+
+    // Apply any needed rotation to the decoded JPEG
+    matrix.postRotate(rotation.toFloat())
+    return Bitmap.createBitmap(
+        bitmap, 0, 0, bitmap.width, bitmap.height, matrix, true
+    )
+}
+
+/**
+ * Converts a [tvi.webrtc.VideoFrame] to an upright [targetWidth] x [targetHeight] Bitmap,
+ * downsampling while converting. This is much cheaper than converting the full frame and scaling
+ * the result, which makes it suitable for thumbnails.
+ *
+ * [cropRect] selects the region of the unrotated frame to convert and defaults to the whole
+ * frame. The region is stretched to the target size, so pass a crop with the target aspect ratio
+ * to avoid distortion.
+ */
+fun VideoFrame.toBitmap(
+    targetWidth: Int,
+    targetHeight: Int,
+    cropRect: Rect? = null,
+    reuseBitmap: Bitmap? = null
+): Bitmap? {
+    val frameRect = Rect(0, 0, buffer.width, buffer.height)
+    val crop = cropRect ?: frameRect
+    require(!crop.isEmpty && frameRect.contains(crop)) { "Crop $crop is outside of $frameRect" }
+    val i420Buffer = toI420Buffer()
+    val normalizedRotation = (rotation % 360 + 360) % 360
+    val transposed = normalizedRotation == 90 || normalizedRotation == 270
+    val scaledWidth = if (transposed) targetHeight else targetWidth
+    val scaledHeight = if (transposed) targetWidth else targetHeight
+    val pixels = argbPixelPool.acquire(targetWidth * targetHeight)
+    i420ToArgbScaled(
+        i420Buffer.dataY, i420Buffer.strideY,
+        i420Buffer.dataU, i420Buffer.strideU,
+        i420Buffer.dataV, i420Buffer.strideV,
+        crop.left, crop.top, crop.width(), crop.height(),
+        pixels, scaledWidth, scaledHeight, byteArrayPool, normalizedRotation
+    )
+    i420Buffer.release()
+    val bitmap = reusableBitmap(reuseBitmap, targetWidth, targetHeight)
+    bitmap.setPixels(pixels, 0, targetWidth, 0, 0, targetWidth, targetHeight)
+    argbPixelPool.release(pixels)
+    return bitmap
+}
+
+/**
+ * Compresses a [tvi.webrtc.VideoFrame] to an upright JPEG and streams it to [outputStream]. The
+ * frame is packed into a pooled NV21 buffer and encoded straight into the stream, so no Bitmap
+ * or encoded byte array is created. The stream is not closed.
+ *
+ * @return true if the frame was written.
+ */
+fun VideoFrame.writeJpeg(
+    outputStream: OutputStream,
+    quality: Int = DEFAULT_JPEG_QUALITY
+): Boolean {
+    val i420Buffer = toI420Buffer()
+    val normalizedRotation = (rotation % 360 + 360) % 360
+    val yuvImage = if (normalizedRotation == 0) {
+        i420ToYuvImage(i420Buffer, i420Buffer.width, i420Buffer.height)
     } else {
-        buffer.toI420()
+        i420ToRotatedYuvImage(i420Buffer, normalizedRotation)
+    }
+    i420Buffer.release()
+    val rect = Rect(0, 0, yuvImage.width, yuvImage.height)
+    val written = yuvImage.compressToJpeg(rect, quality, outputStream)
+    byteArrayPool.release(yuvImage.yuvData)
+    return written
+}
+
+/**
+ * Writes a [tvi.webrtc.VideoFrame] as a JPEG to [channel], such as a
+ * [java.nio.channels.FileChannel]. The channel is not closed.
+ */
+fun VideoFrame.writeJpeg(
+    channel: WritableByteChannel,
+    quality: Int = DEFAULT_JPEG_QUALITY
+): Boolean {
+    return writeJpeg(Channels.newOutputStream(channel), quality)
+}
+
+/**
+ * Writes a [tvi.webrtc.VideoFrame] as a JPEG to [file], replacing any existing content.
+ */
+fun VideoFrame.writeJpeg(
+    file: File,
+    quality: Int = DEFAULT_JPEG_QUALITY
+): Boolean {
+    return FileOutputStream(file).use { writeJpeg(it, quality) }
+}
+
+/**
+ * Semi-planar layouts that [copyTo] can write.
+ */
+enum class SemiPlanarFormat {
+    /**
+     * A Y plane followed by interleaved U and V samples.
+     */
+    NV12,
+
+    /**
+     * A Y plane followed by interleaved V and U samples.
+     */
+    NV21
+}
+
+/**
+ * Returns the number of bytes [copyTo] writes for this frame.
+ */
+fun VideoFrame.semiPlanarSize(): Int = nv21Size(buffer.width, buffer.height)
+
+/**
+ * Copies the unrotated pixels of a [tvi.webrtc.VideoFrame] into [dst] in the given semi-planar
+ * [format], starting at the buffer position and advancing it past the written bytes. The Y plane
+ * has a stride equal to the frame width and is followed by the interleaved chroma plane. Direct
+ * buffers are written without staging the frame in a heap array, so the result can be handed to
+ * native code as is.
+ *
+ * @throws IllegalArgumentException if [dst] has fewer than [semiPlanarSize] bytes remaining.
+ */
+fun VideoFrame.copyTo(dst: ByteBuffer, format: SemiPlanarFormat) {
+    require(dst.remaining() >= semiPlanarSize()) {
+        "Destination has ${dst.remaining()} bytes remaining but ${semiPlanarSize()} are required"
     }
+    val i420Buffer = toI420Buffer()
+    try {
+        i420ToSemiPlanar(
+            i420Buffer.dataY, i420Buffer.strideY,
+            i420Buffer.dataU, i420Buffer.strideU,
+            i420Buffer.dataV, i420Buffer.strideV,
+            dst, i420Buffer.width, i420Buffer.height,
+            format == SemiPlanarFormat.NV21, byteArrayPool
+        )
+    } finally {
+        i420Buffer.release()
+    }
+}
+
+/**
+ * Returns the number of bytes [copyI420To] writes for this frame.
+ */
+fun VideoFrame.i420Size(): Int = i420Size(buffer.width, buffer.height)
+
+/**
+ * Copies the unrotated pixels of a [tvi.webrtc.VideoFrame] into [dst] as I420 with tightly packed
+ * Y, U and V planes, starting at the buffer position and advancing it past the written bytes. The
+ * planes are transferred buffer to buffer, which makes this suitable for keeping pooled copies of
+ * frames.
+ *
+ * @throws IllegalArgumentException if [dst] has fewer than [i420Size] bytes remaining.
+ */
+fun VideoFrame.copyI420To(dst: ByteBuffer) {
+    require(dst.remaining() >= i420Size()) {
+        "Destination has ${dst.remaining()} bytes remaining but ${i420Size()} are required"
+    }
+    val i420Buffer = toI420Buffer()
+    try {
+        i420ToPacked(
+            i420Buffer.dataY, i420Buffer.strideY,
+            i420Buffer.dataU, i420Buffer.strideU,
+            i420Buffer.dataV, i420Buffer.strideV,
+            dst, i420Buffer.width, i420Buffer.height
+        )
+    } finally {
+        i420Buffer.release()
+    }
+}
+
+/**
+ * Returns the frame as I420. Texture frames are converted by their own buffer on the thread that
+ * owns the texture, with a converter it keeps between frames, so callers need no EGL context.
+ */
+private fun VideoFrame.toI420Buffer(): VideoFrame.I420Buffer = buffer.toI420()
+
+private fun reusableBitmap(reuseBitmap: Bitmap?, width: Int, height: Int): Bitmap {
+    return if (reuseBitmap != null &&
+        reuseBitmap.isMutable &&
+        reuseBitmap.config == Bitmap.Config.ARGB_8888 &&
+        reuseBitmap.width == width &&
+        reuseBitmap.height == height
+    ) {
+        reuseBitmap
+    } else {
+        Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888)
+    }
+}
+
+private fun i420ToBitmap(
+    i420Buffer: VideoFrame.I420Buffer,
+    rotation: Int,
+    reuseBitmap: Bitmap?,
+    parallel: Boolean
+): Bitmap {
+    val width = i420Buffer.width
+    val height = i420Buffer.height
+    val normalizedRotation = (rotation % 360 + 360) % 360
+    val transposed = normalizedRotation == 90 || normalizedRotation == 270
+    val bitmapWidth = if (transposed) height else width
+    val bitmapHeight = if (transposed) width else height
+    val pixels = argbPixelPool.acquire(width * height)
+    if (parallel) {
+        i420ToArgbParallel(
+            i420Buffer.dataY, i420Buffer.strideY,
+            i420Buffer.dataU, i420Buffer.strideU,
+            i420Buffer.dataV, i420Buffer.strideV,
+            pixels, width, height, FrameConversionExecutor.rowPool, normalizedRotation
+        )
+    } else {
+        i420ToArgb(
+            i420Buffer.dataY, i420Buffer.strideY,
+            i420Buffer.dataU, i420Buffer.strideU,
+            i420Buffer.dataV, i420Buffer.strideV,
+            pixels, width, height, byteArrayPool, normalizedRotation
+        )
+    }
+    val bitmap = reusableBitmap(reuseBitmap, bitmapWidth, bitmapHeight)
+    bitmap.setPixels(pixels, 0, bitmapWidth, 0, 0, bitmapWidth, bitmapHeight)
+    argbPixelPool.release(pixels)
+    return bitmap
+}
+
+private fun i420ToBitmapViaJpeg(i420Buffer: VideoFrame.I420Buffer): Bitmap? {
     val yuvImage = i420ToYuvImage(
         i420Buffer,
-        buffer.width,
-        buffer.height
+        i420Buffer.width,
+        i420Buffer.height
     )
     val stream = ByteArrayOutputStream()
     val rect =
@@ -38,10 +308,11 @@ fun VideoFrame.toBitmap(): Bitmap? {
 
     // Compress YuvImage to jpeg
     yuvImage.compressToJpeg(rect, 100, stream)
+    byteArrayPool.release(yuvImage.yuvData)
 
     // Convert jpeg to Bitmap
     val imageBytes = stream.toByteArray()
-    var bitmap = if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.P) {
+    return if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.P) {
         val buffer = ByteBuffer.wrap(imageBytes)
         val src =
             ImageDecoder.createSource(buffer)
@@ -49,85 +320,42 @@ fun VideoFrame.toBitmap(): Bitmap? {
             ImageDecoder.decodeBitmap(src)
         } catch (e: IOException) {
             e.printStackTrace()
-            return null
+            null
         }
     } else {
         BitmapFactory.decodeByteArray(imageBytes, 0, imageBytes.size)
     }
-    val matrix = Matrix()
-
-    // Apply any needed rotation
-    matrix.postRotate(rotation.toFloat())
-    bitmap = Bitmap.createBitmap(
-        bitmap!!, 0, 0, bitmap.width, bitmap.height, matrix, true
-    )
-    return bitmap
 }
 
 private fun i420ToYuvImage(i420Buffer: VideoFrame.I420Buffer, width: Int, height: Int): YuvImage {
-    val yuvPlanes = arrayOf(
-        i420Buffer.dataY, i420Buffer.dataU, i420Buffer.dataV
+    val bytes = byteArrayPool.acquire(nv21Size(width, height))
+    i420ToNv21(
+        i420Buffer.dataY, i420Buffer.strideY,
+        i420Buffer.dataU, i420Buffer.strideU,
+        i420Buffer.dataV, i420Buffer.strideV,
+        bytes, width, height, byteArrayPool
     )
-    val yuvStrides = intArrayOf(
-        i420Buffer.strideY, i420Buffer.strideU, i420Buffer.strideV
-    )
-    if (yuvStrides[0] != width) {
-        return fastI420ToYuvImage(yuvPlanes, yuvStrides, width, height)
-    }
-    if (yuvStrides[1] != width / 2) {
-        return fastI420ToYuvImage(yuvPlanes, yuvStrides, width, height)
-    }
-    if (yuvStrides[2] != width / 2) {
-        return fastI420ToYuvImage(yuvPlanes, yuvStrides, width, height)
-    }
-    val bytes = ByteArray(
-        yuvStrides[0] * height + yuvStrides[1] * height / 2 + yuvStrides[2] * height / 2
-    )
-    var tmp = ByteBuffer.wrap(bytes, 0, width * height)
-    copyPlane(yuvPlanes[0], tmp)
-    val tmpBytes = ByteArray(width / 2 * height / 2)
-    tmp = ByteBuffer.wrap(tmpBytes, 0, width / 2 * height / 2)
-    copyPlane(yuvPlanes[2], tmp)
-    for (row in 0 until height / 2) {
-        for (col in 0 until width / 2) {
-            bytes[width * height + row * width + col * 2] =
-                tmpBytes[row * width / 2 + col]
-        }
-    }
-    copyPlane(yuvPlanes[1], tmp)
-    for (row in 0 until height / 2) {
-        for (col in 0 until width / 2) {
-            bytes[width * height + row * width + col * 2 + 1] =
-                tmpBytes[row * width / 2 + col]
-        }
-    }
-    return YuvImage(bytes, ImageFormat.NV21, width, height, null)
+    return YuvImage(bytes, ImageFormat.NV21, width, height, nv21Strides(width))
 }
 
-private fun fastI420ToYuvImage(
-    yuvPlanes: Array<ByteBuffer>,
-    yuvStrides: IntArray,
-    width: Int,
-    height: Int
-): YuvImage {
-    val bytes = ByteArray(width * height * 3 / 2)
-    var i = 0
-    for (row in 0 until height) {
-        for (col in 0 until width) {
-            bytes[i++] = yuvPlanes[0].get(col + row * yuvStrides[0])
-        }
-    }
-    for (row in 0 until height / 2) {
-        for (col in 0 until width / 2) {
-            bytes[i++] = yuvPlanes[2].get(col + row * yuvStrides[2])
-            bytes[i++] = yuvPlanes[1].get(col + row * yuvStrides[1])
-        }
-    }
-    return YuvImage(bytes, ImageFormat.NV21, width, height, null)
-}
-
-private fun copyPlane(src: ByteBuffer, dst: ByteBuffer) {
-    src.position(0).limit(src.capacity())
-    dst.put(src)
-    dst.position(0).limit(dst.capacity())
+private fun i420ToRotatedYuvImage(i420Buffer: VideoFrame.I420Buffer, rotation: Int): YuvImage {
+    val width = i420Buffer.width
+    val height = i420Buffer.height
+    val transposed = rotation == 90 || rotation == 270
+    val rotatedWidth = if (transposed) height else width
+    val rotatedHeight = if (transposed) width else height
+    val bytes = byteArrayPool.acquire(nv21Size(width, height))
+    i420ToNv21Rotated(
+        i420Buffer.dataY, i420Buffer.strideY,
+        i420Buffer.dataU, i420Buffer.strideU,
+        i420Buffer.dataV, i420Buffer.strideV,
+        bytes, width, height, rotation, byteArrayPool
+    )
+    return YuvImage(
+        bytes,
+        ImageFormat.NV21,
+        rotatedWidth,
+        rotatedHeight,
+        nv21Strides(rotatedWidth)
+    )
 }
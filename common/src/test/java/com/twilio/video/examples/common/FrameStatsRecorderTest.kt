@@ -0,0 +1,63 @@
+package com.twilio.video.examples.common
+
+import java.util.concurrent.TimeUnit
+import org.junit.Assert.assertEquals
+import org.junit.Test
+
+class FrameStatsRecorderTest {
+    @Test
+    fun snapshot_reportsSteadyFrameRateWithoutJitter() {
+        val recorder = FrameStatsRecorder(GAP_THRESHOLD_NS)
+
+        for (frame in 0 until 30) {
+            recorder.record(640, 480, 90, frame * FRAME_INTERVAL_NS)
+        }
+
+        val snapshot = recorder.snapshot()
+        assertEquals(30, snapshot.frames)
+        assertEquals(30.0, snapshot.framesPerSecond, 0.01)
+        assertEquals(0.0, snapshot.jitterMs, 0.0)
+        assertEquals(640, snapshot.width)
+        assertEquals(480, snapshot.height)
+        assertEquals(90, snapshot.rotation)
+        assertEquals(0, snapshot.gaps)
+    }
+
+    @Test
+    fun snapshot_countsChangesAndGaps() {
+        val recorder = FrameStatsRecorder(GAP_THRESHOLD_NS)
+
+        recorder.record(640, 480, 0, 0)
+        recorder.record(1280, 720, 0, FRAME_INTERVAL_NS)
+        recorder.record(1280, 720, 90, 2 * FRAME_INTERVAL_NS)
+        recorder.record(1280, 720, 90, 2 * FRAME_INTERVAL_NS + TimeUnit.SECONDS.toNanos(2))
+
+        val snapshot = recorder.snapshot()
+        assertEquals(4, snapshot.frames)
+        assertEquals(1, snapshot.resolutionChanges)
+        assertEquals(1, snapshot.rotationChanges)
+        assertEquals(1, snapshot.gaps)
+        assertEquals(2000, snapshot.longestGapMs)
+        assertEquals(30.0, snapshot.framesPerSecond, 0.01)
+    }
+
+    @Test
+    fun snapshot_reportsJitterOfUnevenIntervals() {
+        val recorder = FrameStatsRecorder(GAP_THRESHOLD_NS)
+        var timestampNs = 0L
+
+        for (frame in 0 until 200) {
+            recorder.record(640, 480, 0, timestampNs)
+            timestampNs += if (frame % 2 == 0) FRAME_INTERVAL_NS / 2 else FRAME_INTERVAL_NS * 3 / 2
+        }
+
+        val snapshot = recorder.snapshot()
+        assertEquals(30.0, snapshot.framesPerSecond, 3.0)
+        assertEquals(16.7, snapshot.jitterMs, 2.0)
+    }
+
+    companion object {
+        private val FRAME_INTERVAL_NS = TimeUnit.SECONDS.toNanos(1) / 30
+        private val GAP_THRESHOLD_NS = TimeUnit.MILLISECONDS.toNanos(500)
+    }
+}
@@ -0,0 +1,68 @@
+package com.twilio.video.examples.common
+
+import java.nio.ByteBuffer
+import java.util.Random
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Test
+
+class I420ToArgbScaledTest {
+    @Test
+    fun i420ToArgbScaled_matchesFullConversionAtSameSize() {
+        val width = 6
+        val height = 4
+        val random = Random(7)
+        val dataY = ByteBuffer.wrap(ByteArray(width * height).also { random.nextBytes(it) })
+        val dataU = ByteBuffer.wrap(ByteArray(6).also { random.nextBytes(it) })
+        val dataV = ByteBuffer.wrap(ByteArray(6).also { random.nextBytes(it) })
+        val full = IntArray(width * height)
+        val scaled = IntArray(width * height)
+
+        i420ToArgb(dataY, width, dataU, 3, dataV, 3, full, width, height, ByteArrayPool())
+        i420ToArgbScaled(
+            dataY, width, dataU, 3, dataV, 3,
+            0, 0, width, height,
+            scaled, width, height, ByteArrayPool()
+        )
+
+        assertArrayEquals(full, scaled)
+    }
+
+    @Test
+    fun i420ToArgbScaled_averagesTwoByTwoBlocksWhenHalving() {
+        val dataY = ByteBuffer.wrap(byteArrayOf(100, 102, 16, 16, 104, 106, 16, 16))
+        val dataU = ByteBuffer.wrap(byteArrayOf(128.toByte(), 128.toByte()))
+        val dataV = ByteBuffer.wrap(byteArrayOf(128.toByte(), 128.toByte()))
+        val argb = IntArray(2)
+
+        i420ToArgbScaled(
+            dataY, 4, dataU, 2, dataV, 2,
+            0, 0, 4, 2,
+            argb, 2, 1, ByteArrayPool()
+        )
+
+        assertEquals(yuvToArgb(103, 128, 128), argb[0])
+        assertEquals(yuvToArgb(16, 128, 128), argb[1])
+    }
+
+    @Test
+    fun i420ToArgbScaled_supportsOddFramesAndCrops() {
+        val width = 5
+        val height = 3
+        val dataY = ByteBuffer.wrap(ByteArray(width * height) { 126.toByte() })
+        val dataU = ByteBuffer.wrap(ByteArray(6) { 128.toByte() })
+        val dataV = ByteBuffer.wrap(ByteArray(6) { 128.toByte() })
+
+        for (crop in arrayOf(intArrayOf(1, 1, 3, 2), intArrayOf(1, 1, 4, 2), intArrayOf(0, 0, 5, 3))) {
+            val argb = IntArray(4)
+
+            i420ToArgbScaled(
+                dataY, width, dataU, 3, dataV, 3,
+                crop[0], crop[1], crop[2], crop[3],
+                argb, 2, 2, ByteArrayPool(), 90
+            )
+
+            argb.forEach { assertEquals(0xff808080.toInt(), it) }
+        }
+    }
+}
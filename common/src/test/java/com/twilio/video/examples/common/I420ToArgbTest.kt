@@ -0,0 +1,119 @@
+package com.twilio.video.examples.common
+
+import java.nio.ByteBuffer
+import java.util.Random
+import java.util.concurrent.Executors
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Test
+
+class I420ToArgbTest {
+    @Test
+    fun i420ToArgb_convertsNeutralChromaToGray() {
+        val argb = convert(width = 2, height = 2, y = 126, u = 128, v = 128)
+
+        argb.forEach { assertEquals(0xff808080.toInt(), it) }
+    }
+
+    @Test
+    fun i420ToArgb_convertsBt601Red() {
+        val argb = convert(width = 2, height = 2, y = 81, u = 90, v = 240)
+
+        argb.forEach { assertEquals(0xfffe0000.toInt(), it) }
+    }
+
+    @Test
+    fun i420ToArgb_sharesChromaAcrossTwoByTwoBlocksWithPaddedStrides() {
+        val width = 4
+        val height = 2
+        val strideY = 8
+        val strideChroma = 4
+        val dataY = ByteBuffer.wrap(ByteArray(strideY * height) { 126.toByte() })
+        val dataU = ByteBuffer.wrap(byteArrayOf(128.toByte(), 90, 0, 0))
+        val dataV = ByteBuffer.wrap(byteArrayOf(128.toByte(), 240.toByte(), 0, 0))
+        val argb = IntArray(width * height)
+
+        i420ToArgb(
+            dataY, strideY, dataU, strideChroma, dataV, strideChroma,
+            argb, width, height, ByteArrayPool()
+        )
+
+        for (row in 0 until height) {
+            assertEquals(argb[row * width], argb[row * width + 1])
+            assertEquals(argb[row * width + 2], argb[row * width + 3])
+        }
+        assertEquals(0xff808080.toInt(), argb[0])
+    }
+
+    @Test
+    fun i420ToArgb_rotatesWhileConverting() {
+        val width = 3
+        val height = 2
+        val expectedWhiteIndex = mapOf(0 to 0, 90 to 1, 180 to 5, 270 to 4)
+
+        for ((rotation, whiteIndex) in expectedWhiteIndex) {
+            // A white pixel in the top left corner of an otherwise black frame
+            val lumaSamples = ByteArray(width * height) { (if (it == 0) 235 else 16).toByte() }
+            val dataY = ByteBuffer.wrap(lumaSamples)
+            val dataU = ByteBuffer.wrap(ByteArray(2) { 128.toByte() })
+            val dataV = ByteBuffer.wrap(ByteArray(2) { 128.toByte() })
+            val argb = IntArray(width * height)
+
+            i420ToArgb(
+                dataY, width, dataU, 2, dataV, 2,
+                argb, width, height, ByteArrayPool(), rotation
+            )
+
+            argb.forEachIndexed { index, pixel ->
+                val expected = if (index == whiteIndex) 0xffffffff.toInt() else 0xff000000.toInt()
+                assertEquals("rotation $rotation, pixel $index", expected, pixel)
+            }
+        }
+    }
+
+    @Test
+    fun i420ToArgbParallel_matchesSequentialConversion() {
+        val width = 1280
+        val height = 722
+        val random = Random(42)
+        val chromaSize = chromaWidth(width) * chromaHeight(height)
+        val dataY = ByteBuffer.wrap(ByteArray(width * height).also { random.nextBytes(it) })
+        val dataU = ByteBuffer.wrap(ByteArray(chromaSize).also { random.nextBytes(it) })
+        val dataV = ByteBuffer.wrap(ByteArray(chromaSize).also { random.nextBytes(it) })
+        val executor = Executors.newFixedThreadPool(3)
+
+        try {
+            for (rotation in intArrayOf(0, 90, 180, 270)) {
+                val sequential = IntArray(width * height)
+                val parallel = IntArray(width * height)
+                i420ToArgb(
+                    dataY, width, dataU, chromaWidth(width), dataV, chromaWidth(width),
+                    sequential, width, height, ByteArrayPool(), rotation
+                )
+                i420ToArgbParallel(
+                    dataY, width, dataU, chromaWidth(width), dataV, chromaWidth(width),
+                    parallel, width, height, ByteArrayPool(), rotation, executor, 4
+                )
+
+                assertArrayEquals("rotation $rotation", sequential, parallel)
+            }
+        } finally {
+            executor.shutdown()
+        }
+    }
+
+    private fun convert(width: Int, height: Int, y: Int, u: Int, v: Int): IntArray {
+        val chromaSize = chromaWidth(width) * chromaHeight(height)
+        val dataY = ByteBuffer.wrap(ByteArray(width * height) { y.toByte() })
+        val dataU = ByteBuffer.wrap(ByteArray(chromaSize) { u.toByte() })
+        val dataV = ByteBuffer.wrap(ByteArray(chromaSize) { v.toByte() })
+        val argb = IntArray(width * height)
+
+        i420ToArgb(
+            dataY, width, dataU, chromaWidth(width), dataV, chromaWidth(width),
+            argb, width, height, ByteArrayPool()
+        )
+
+        return argb
+    }
+}
@@ -0,0 +1,221 @@
+package com.twilio.video.examples.common
+
+import java.lang.management.ManagementFactory
+import java.nio.ByteBuffer
+import java.util.Random
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class I420UtilsTest {
+    @Test
+    fun i420ToNv21_interleavesChromaAsVu() {
+        val width = 4
+        val height = 2
+        val dataY = ByteBuffer.wrap(ByteArray(width * height) { it.toByte() })
+        val dataU = ByteBuffer.wrap(byteArrayOf(10, 11))
+        val dataV = ByteBuffer.wrap(byteArrayOf(20, 21))
+        val nv21 = ByteArray(nv21Size(width, height))
+
+        i420ToNv21(dataY, width, dataU, 2, dataV, 2, nv21, width, height, ByteArrayPool())
+
+        val expected = byteArrayOf(0, 1, 2, 3, 4, 5, 6, 7, 20, 10, 21, 11)
+        assertEquals(expected.toList(), nv21.toList())
+    }
+
+    @Test
+    fun i420ToNv21_copiesPaddedPlanesOfOddSizes() {
+        val random = Random(3)
+        for (width in intArrayOf(1, 2, 3, 17, 64, 65)) {
+            for (height in intArrayOf(1, 2, 5, 16)) {
+                for (padding in intArrayOf(0, 1, 3, 16, 64)) {
+                    val chromaWidth = chromaWidth(width)
+                    val chromaHeight = chromaHeight(height)
+                    val strideY = width + padding
+                    val strideChroma = chromaWidth + padding
+                    val dataY = randomPlane(random, strideY, height)
+                    val dataU = randomPlane(random, strideChroma, chromaHeight)
+                    val dataV = randomPlane(random, strideChroma, chromaHeight)
+                    val nv21 = ByteArray(nv21Size(width, height))
+
+                    i420ToNv21(
+                        dataY, strideY, dataU, strideChroma, dataV, strideChroma,
+                        nv21, width, height, ByteArrayPool()
+                    )
+
+                    val expected = referenceNv21(
+                        dataY, strideY, dataU, strideChroma, dataV, strideChroma, width, height
+                    )
+                    assertEquals(
+                        "${width}x$height padded by $padding",
+                        expected.toList(),
+                        nv21.toList()
+                    )
+                }
+            }
+        }
+    }
+
+    @Test
+    fun i420ToNv21Rotated_rotatesLumaAndChroma() {
+        val width = 4
+        val height = 2
+        val dataY = ByteBuffer.wrap(ByteArray(width * height) { it.toByte() })
+        val dataU = ByteBuffer.wrap(byteArrayOf(10, 11))
+        val dataV = ByteBuffer.wrap(byteArrayOf(20, 21))
+        val nv21 = ByteArray(nv21Size(width, height))
+
+        i420ToNv21Rotated(dataY, width, dataU, 2, dataV, 2, nv21, width, height, 90, ByteArrayPool())
+
+        val expected = byteArrayOf(4, 0, 5, 1, 6, 2, 7, 3, 20, 10, 21, 11)
+        assertEquals(expected.toList(), nv21.toList())
+    }
+
+    @Test
+    fun i420ToSemiPlanar_writesNv12AndNv21IntoDirectBuffers() {
+        val width = 3
+        val height = 2
+        val strideY = 4
+        val dataY = ByteBuffer.wrap(byteArrayOf(0, 1, 2, 99, 3, 4, 5, 99))
+        val dataU = ByteBuffer.wrap(byteArrayOf(10, 11))
+        val dataV = ByteBuffer.wrap(byteArrayOf(20, 21))
+        val expected = mapOf(
+            false to byteArrayOf(0, 1, 2, 3, 4, 5, 10, 20, 11, 21),
+            true to byteArrayOf(0, 1, 2, 3, 4, 5, 20, 10, 21, 11)
+        )
+
+        for ((vuOrder, bytes) in expected) {
+            // Start past a one byte header to check the position is honoured and advanced
+            val dst = ByteBuffer.allocateDirect(1 + nv21Size(width, height))
+            dst.position(1)
+
+            i420ToSemiPlanar(
+                dataY, strideY, dataU, 2, dataV, 2,
+                dst, width, height, vuOrder, ByteArrayPool()
+            )
+
+            assertEquals(dst.capacity(), dst.position())
+            val written = ByteArray(bytes.size)
+            dst.position(1)
+            dst.get(written)
+            assertEquals(bytes.toList(), written.toList())
+        }
+    }
+
+    @Test
+    fun i420ToPacked_removesStridePadding() {
+        val width = 3
+        val height = 2
+        val dataY = ByteBuffer.wrap(byteArrayOf(0, 1, 2, 99, 3, 4, 5, 99))
+        val dataU = ByteBuffer.wrap(byteArrayOf(10, 11, 99))
+        val dataV = ByteBuffer.wrap(byteArrayOf(20, 21))
+        val dst = ByteBuffer.allocateDirect(i420Size(width, height))
+
+        i420ToPacked(dataY, 4, dataU, 3, dataV, 2, dst, width, height)
+
+        assertEquals(dst.capacity(), dst.position())
+        assertEquals(dataY.capacity(), dataY.limit())
+        val written = ByteArray(dst.capacity())
+        dst.flip()
+        dst.get(written)
+        val expected = byteArrayOf(0, 1, 2, 3, 4, 5, 10, 11, 20, 21)
+        assertEquals(expected.toList(), written.toList())
+    }
+
+    @Test(expected = IllegalArgumentException::class)
+    fun i420ToSemiPlanar_rejectsSmallDestination() {
+        val dataY = ByteBuffer.allocate(4)
+        val dataU = ByteBuffer.allocate(1)
+        val dataV = ByteBuffer.allocate(1)
+
+        i420ToSemiPlanar(
+            dataY, 2, dataU, 1, dataV, 1,
+            ByteBuffer.allocateDirect(5), 2, 2, false, ByteArrayPool()
+        )
+    }
+
+    @Test
+    fun i420ToNv21_doesNotAllocatePerConversion() {
+        val threadMXBean = ManagementFactory.getThreadMXBean() as com.sun.management.ThreadMXBean
+        val width = 1920
+        val height = 1080
+        val frameSize = nv21Size(width, height)
+        val dataY = ByteBuffer.allocateDirect(width * height)
+        val dataU = ByteBuffer.allocateDirect(chromaWidth(width) * chromaHeight(height))
+        val dataV = ByteBuffer.allocateDirect(chromaWidth(width) * chromaHeight(height))
+        val pool = ByteArrayPool()
+
+        // Warm up the pool and the JIT before measuring
+        repeat(WARM_UP_CONVERSIONS) { convert(pool, frameSize, dataY, dataU, dataV, width, height) }
+
+        val threadId = Thread.currentThread().id
+        val allocatedBefore = threadMXBean.getThreadAllocatedBytes(threadId)
+        repeat(MEASURED_CONVERSIONS) { convert(pool, frameSize, dataY, dataU, dataV, width, height) }
+        val allocatedPerConversion =
+            (threadMXBean.getThreadAllocatedBytes(threadId) - allocatedBefore) /
+                MEASURED_CONVERSIONS
+
+        assertTrue(
+            "Allocated $allocatedPerConversion bytes per conversion",
+            allocatedPerConversion < MAX_BYTES_PER_CONVERSION
+        )
+    }
+
+    private fun randomPlane(random: Random, stride: Int, rows: Int): ByteBuffer {
+        return ByteBuffer.wrap(ByteArray(stride * rows).also { random.nextBytes(it) })
+    }
+
+    /**
+     * Straightforward per pixel NV21 packing used to check the optimised implementation.
+     */
+    private fun referenceNv21(
+        dataY: ByteBuffer,
+        strideY: Int,
+        dataU: ByteBuffer,
+        strideU: Int,
+        dataV: ByteBuffer,
+        strideV: Int,
+        width: Int,
+        height: Int
+    ): ByteArray {
+        val nv21 = ByteArray(nv21Size(width, height))
+        var i = 0
+        for (row in 0 until height) {
+            for (col in 0 until width) {
+                nv21[i++] = dataY.get(row * strideY + col)
+            }
+        }
+        for (row in 0 until chromaHeight(height)) {
+            for (col in 0 until chromaWidth(width)) {
+                nv21[i++] = dataV.get(row * strideV + col)
+                nv21[i++] = dataU.get(row * strideU + col)
+            }
+        }
+        return nv21
+    }
+
+    private fun convert(
+        pool: ByteArrayPool,
+        frameSize: Int,
+        dataY: ByteBuffer,
+        dataU: ByteBuffer,
+        dataV: ByteBuffer,
+        width: Int,
+        height: Int
+    ) {
+        val nv21 = pool.acquire(frameSize)
+        i420ToNv21(
+            dataY, width,
+            dataU, chromaWidth(width),
+            dataV, chromaWidth(width),
+            nv21, width, height, pool
+        )
+        pool.release(nv21)
+    }
+
+    companion object {
+        private const val WARM_UP_CONVERSIONS = 20
+        private const val MEASURED_CONVERSIONS = 50
+        private const val MAX_BYTES_PER_CONVERSION = 1024L
+    }
+}
@@ -0,0 +1,89 @@
+package com.twilio.video.examples.common
+
+import java.util.Collections
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.LinkedBlockingQueue
+import java.util.concurrent.ThreadPoolExecutor
+import java.util.concurrent.TimeUnit
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class LatestWinsWorkerTest {
+    @Test(timeout = 10_000)
+    fun offer_returnsWhileWorkerIsBusyAndKeepsOnlyTheLatestItem() {
+        val processing = CountDownLatch(1)
+        val unblock = CountDownLatch(1)
+        val processed = Collections.synchronizedList(ArrayList<Int>())
+        val dropped = Collections.synchronizedList(ArrayList<Int>())
+        val latestProcessed = CountDownLatch(1)
+        val worker = LatestWinsWorker<Int>("LatestWinsWorkerTest", { dropped.add(it) }) {
+            processed.add(it)
+            if (it == 0) {
+                processing.countDown()
+                unblock.await()
+            }
+            if (it == OFFERS) {
+                latestProcessed.countDown()
+            }
+        }
+
+        // Occupy the worker with the first item
+        worker.offer(0)
+        assertTrue(processing.await(5, TimeUnit.SECONDS))
+
+        // Every offer returns although the worker cannot make progress
+        for (item in 1..OFFERS) {
+            worker.offer(item)
+        }
+        unblock.countDown()
+        assertTrue(latestProcessed.await(5, TimeUnit.SECONDS))
+        worker.release()
+
+        assertEquals(listOf(0, OFFERS), processed)
+        assertEquals((1 until OFFERS).toList(), dropped)
+    }
+
+    @Test(timeout = 10_000)
+    fun offer_keepsAtMostOneTaskQueuedWhileWorkerIsBusy() {
+        val executor = ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, LinkedBlockingQueue())
+        val processing = CountDownLatch(1)
+        val unblock = CountDownLatch(1)
+        val latestProcessed = CountDownLatch(1)
+        val worker = LatestWinsWorker<Int>(executor, {}) {
+            if (it == 0) {
+                processing.countDown()
+                unblock.await()
+            }
+            if (it == OFFERS) {
+                latestProcessed.countDown()
+            }
+        }
+
+        worker.offer(0)
+        assertTrue(processing.await(5, TimeUnit.SECONDS))
+
+        for (item in 1..OFFERS) {
+            worker.offer(item)
+            assertTrue(executor.queue.size <= 1)
+        }
+        unblock.countDown()
+        assertTrue(latestProcessed.await(5, TimeUnit.SECONDS))
+        worker.release()
+    }
+
+    @Test
+    fun offer_dropsItemsAfterRelease() {
+        val dropped = ArrayList<Int>()
+        val worker = LatestWinsWorker<Int>("LatestWinsWorkerTest", { dropped.add(it) }) {}
+
+        worker.release()
+        worker.offer(1)
+
+        assertEquals(listOf(1), dropped)
+    }
+
+    companion object {
+        private const val OFFERS = 1000
+    }
+}
@@ -0,0 +1,41 @@
+package com.twilio.video.examples.common
+
+import java.nio.ByteBuffer
+import org.junit.Assert.assertEquals
+import org.junit.Test
+
+class LumaHashTest {
+    @Test
+    fun lumaHash_ignoresOverallBrightness() {
+        val dark = gradient(90, 80, 0)
+        val bright = gradient(90, 80, 100)
+
+        assertEquals(lumaHash(dark, 90, 90, 80), lumaHash(bright, 90, 90, 80))
+    }
+
+    @Test
+    fun lumaHash_setsABitForEveryDecreasingPair() {
+        val decreasing = gradient(90, 80, 0, step = -2)
+
+        assertEquals(-1L, lumaHash(decreasing, 90, 90, 80))
+        assertEquals(0L, lumaHash(gradient(90, 80, 0), 90, 90, 80))
+    }
+
+    @Test
+    fun hashDistance_countsDifferentBits() {
+        val left = gradient(90, 80, 0)
+        val right = gradient(90, 80, 0, step = -2)
+
+        assertEquals(0, hashDistance(lumaHash(left, 90, 90, 80), lumaHash(left, 90, 90, 80)))
+        assertEquals(64, hashDistance(lumaHash(left, 90, 90, 80), lumaHash(right, 90, 90, 80)))
+        assertEquals(2, hashDistance(0b1011L, 0b0010L))
+    }
+
+    /**
+     * A horizontal gradient starting at [base] that changes by [step] per column.
+     */
+    private fun gradient(width: Int, height: Int, base: Int, step: Int = 1): ByteBuffer {
+        val start = if (step < 0) base - step * width else base
+        return ByteBuffer.wrap(ByteArray(width * height) { (start + step * (it % width)).toByte() })
+    }
+}
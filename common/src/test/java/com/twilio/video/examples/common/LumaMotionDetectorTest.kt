@@ -0,0 +1,46 @@
+package com.twilio.video.examples.common
+
+import java.nio.ByteBuffer
+import org.junit.Assert.assertEquals
+import org.junit.Test
+
+class LumaMotionDetectorTest {
+    @Test
+    fun difference_needsAPreviousFrameOfTheSameSize() {
+        val detector = LumaMotionDetector(4, 4)
+
+        assertEquals(-1f, detector.difference(plane(64, 48, 16), 64, 64, 48), 0f)
+        assertEquals(0f, detector.difference(plane(64, 48, 16), 64, 64, 48), 0f)
+        assertEquals(-1f, detector.difference(plane(32, 24, 16), 32, 32, 24), 0f)
+    }
+
+    @Test
+    fun difference_isTheMeanAbsoluteLumaChange() {
+        val detector = LumaMotionDetector(4, 4)
+        detector.difference(plane(72, 48, 16), 72, 64, 48)
+
+        assertEquals(224f, detector.difference(plane(72, 48, 240), 72, 64, 48), 0f)
+    }
+
+    @Test
+    fun difference_scoresChangesWithinTheSampledRegion() {
+        val detector = LumaMotionDetector(2, 2)
+        val width = 8
+        val height = 8
+        detector.difference(plane(width, height, 0), width, width, height)
+
+        // Brighten the top left quadrant, which holds one of the four samples
+        val changed = plane(width, height, 0)
+        for (row in 0 until height / 2) {
+            for (col in 0 until width / 2) {
+                changed.put(row * width + col, 200.toByte())
+            }
+        }
+
+        assertEquals(50f, detector.difference(changed, width, width, height), 0f)
+    }
+
+    private fun plane(stride: Int, height: Int, luma: Int): ByteBuffer {
+        return ByteBuffer.wrap(ByteArray(stride * height) { luma.toByte() })
+    }
+}
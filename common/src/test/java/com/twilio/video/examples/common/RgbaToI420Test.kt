@@ -0,0 +1,83 @@
+package com.twilio.video.examples.common
+
+import java.nio.ByteBuffer
+import org.junit.Assert.assertEquals
+import org.junit.Test
+
+class RgbaToI420Test {
+    @Test
+    fun rgbaToI420_usesVideoRangeBt601() {
+        val colors = mapOf(
+            intArrayOf(255, 255, 255) to intArrayOf(235, 128, 128),
+            intArrayOf(0, 0, 0) to intArrayOf(16, 128, 128),
+            intArrayOf(255, 0, 0) to intArrayOf(82, 90, 240)
+        )
+
+        for ((rgb, yuv) in colors) {
+            val planes = convert(solid(2, 2, rgb), 8, 2, 2)
+
+            assertEquals(listOf(yuv[0], yuv[0], yuv[0], yuv[0]), planes[0])
+            assertEquals(listOf(yuv[1]), planes[1])
+            assertEquals(listOf(yuv[2]), planes[2])
+        }
+    }
+
+    @Test
+    fun rgbaToI420_averagesTwoByTwoBlocksForChroma() {
+        // A red block next to a block of two white and two black pixels
+        val rgba = ByteBuffer.wrap(
+            byteArrayOf(
+                -1, 0, 0, -1, -1, 0, 0, -1, -1, -1, -1, -1, 0, 0, 0, -1,
+                -1, 0, 0, -1, -1, 0, 0, -1, 0, 0, 0, -1, -1, -1, -1, -1
+            )
+        )
+
+        val planes = convert(rgba, 16, 4, 2)
+
+        assertEquals(listOf(82, 82, 235, 16, 82, 82, 16, 235), planes[0])
+        assertEquals(listOf(90, 128), planes[1])
+        assertEquals(listOf(240, 128), planes[2])
+    }
+
+    @Test
+    fun rgbaToI420_supportsOddSizesAndPaddedRows() {
+        val width = 3
+        val height = 3
+        val stride = width * 4 + 8
+        val rgba = solid(stride / 4, height, intArrayOf(255, 0, 0))
+
+        val planes = convert(rgba, stride, width, height)
+
+        assertEquals(List(width * height) { 82 }, planes[0])
+        assertEquals(List(4) { 90 }, planes[1])
+        assertEquals(List(4) { 240 }, planes[2])
+    }
+
+    private fun solid(width: Int, height: Int, rgb: IntArray): ByteBuffer {
+        return ByteBuffer.wrap(
+            ByteArray(width * height * 4) { if (it % 4 == 3) -1 else rgb[it % 4].toByte() }
+        )
+    }
+
+    /**
+     * Converts into tightly packed planes and returns their unsigned values.
+     */
+    private fun convert(rgba: ByteBuffer, stride: Int, width: Int, height: Int): List<List<Int>> {
+        val chromaSize = chromaWidth(width) * chromaHeight(height)
+        val dataY = ByteBuffer.allocate(width * height)
+        val dataU = ByteBuffer.allocate(chromaSize)
+        val dataV = ByteBuffer.allocate(chromaSize)
+
+        rgbaToI420(
+            rgba, stride,
+            dataY, width,
+            dataU, chromaWidth(width),
+            dataV, chromaWidth(width),
+            width, height, ByteArrayPool()
+        )
+
+        return listOf(dataY, dataU, dataV).map { plane ->
+            plane.array().map { it.toInt() and 0xff }
+        }
+    }
+}
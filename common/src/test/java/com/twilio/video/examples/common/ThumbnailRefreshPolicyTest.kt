@@ -0,0 +1,65 @@
+package com.twilio.video.examples.common
+
+import java.util.concurrent.TimeUnit
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class ThumbnailRefreshPolicyTest {
+    @Test
+    fun newPolicy_replacesAThumbnailCachedBeforeIt() {
+        val policy = ThumbnailRefreshPolicy(HASH_THRESHOLD, MIN_REFRESH_MS)
+
+        assertTrue(policy.isDue(seconds(5)))
+        assertTrue(policy.shouldRefresh(0L, hasThumbnail = true))
+    }
+
+    @Test
+    fun isDue_waitsForTheMinimumIntervalAfterARefresh() {
+        val policy = ThumbnailRefreshPolicy(HASH_THRESHOLD, MIN_REFRESH_MS)
+        policy.onRefreshed(0L, seconds(5))
+
+        assertFalse(policy.isDue(seconds(5) + millis(1)))
+        assertFalse(policy.isDue(seconds(5) + millis(MIN_REFRESH_MS - 1)))
+        assertTrue(policy.isDue(seconds(5) + millis(MIN_REFRESH_MS)))
+    }
+
+    @Test
+    fun evictedThumbnail_isRebuiltOnlyOnceTheIntervalHasPassed() {
+        val policy = ThumbnailRefreshPolicy(HASH_THRESHOLD, MIN_REFRESH_MS)
+        policy.onRefreshed(0L, seconds(5))
+
+        // Eviction does not make the sink due early, only the unchanged hash is ignored
+        assertFalse(policy.isDue(seconds(5) + millis(1)))
+        assertTrue(policy.isDue(seconds(5) + millis(MIN_REFRESH_MS)))
+        assertTrue(policy.shouldRefresh(0L, hasThumbnail = false))
+        assertFalse(policy.shouldRefresh(0L, hasThumbnail = true))
+    }
+
+    @Test
+    fun isDue_whenTimestampsJumpBack() {
+        val policy = ThumbnailRefreshPolicy(HASH_THRESHOLD, MIN_REFRESH_MS)
+        policy.onRefreshed(0L, seconds(5))
+
+        assertTrue(policy.isDue(seconds(1)))
+    }
+
+    @Test
+    fun shouldRefresh_onlyWhenTheHashChangesBeyondTheThreshold() {
+        val policy = ThumbnailRefreshPolicy(HASH_THRESHOLD, MIN_REFRESH_MS)
+        policy.onRefreshed(0L, seconds(5))
+
+        assertFalse(policy.shouldRefresh(0b111L, hasThumbnail = true))
+        assertTrue(policy.shouldRefresh(0b1111L, hasThumbnail = true))
+        assertTrue(policy.shouldRefresh(0L, hasThumbnail = false))
+    }
+
+    private fun seconds(seconds: Long) = TimeUnit.SECONDS.toNanos(seconds)
+
+    private fun millis(millis: Long) = TimeUnit.MILLISECONDS.toNanos(millis)
+
+    private companion object {
+        const val HASH_THRESHOLD = 3
+        const val MIN_REFRESH_MS = 1_000L
+    }
+}
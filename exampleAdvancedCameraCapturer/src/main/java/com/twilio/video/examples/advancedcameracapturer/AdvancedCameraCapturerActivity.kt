@@ -18,6 +18,7 @@ import com.twilio.video.CameraCapturer
 import com.twilio.video.CameraParameterUpdater
 import com.twilio.video.LocalVideoTrack
 import com.twilio.video.VideoView
+import com.twilio.video.examples.common.ProcessorChain
 import tvi.webrtc.Camera1Enumerator
 
 /**
@@ -71,10 +72,16 @@ class AdvancedCameraCapturerActivity : Activity() {
         }
 
     /**
-     * An example of a [tvi.webrtc.VideoProcessor] that decodes the preview image to a [Bitmap]
+     * An example of a [ProcessorChain] stage that decodes the preview image to a [Bitmap]
      * and shows the result in an alert dialog.
      */
-    private val photographer by lazy { Photographer(videoView) }
+    private val photographer by lazy { Photographer() }
+
+    /**
+     * The [tvi.webrtc.VideoProcessor] of the camera track. Further stages can be added alongside
+     * the photographer without another processor.
+     */
+    private val processorChain by lazy { ProcessorChain(photographer) }
 
     public override fun onCreate(savedInstanceState: Bundle?) {
         super.onCreate(savedInstanceState)
@@ -128,6 +135,7 @@ class AdvancedCameraCapturerActivity : Activity() {
     override fun onDestroy() {
         localVideoTrack?.removeSink(videoView)
         localVideoTrack?.release()
+        photographer.release()
         super.onDestroy()
     }
 
@@ -145,7 +153,8 @@ class AdvancedCameraCapturerActivity : Activity() {
     }
 
     private fun addCameraVideo() {
-        localVideoTrack?.videoSource?.setVideoProcessor(photographer)
+        localVideoTrack?.videoSource?.setVideoProcessor(processorChain)
+        localVideoTrack?.addSink(videoView)
         toggleFlashButton.setOnClickListener(toggleFlashButtonClickListener)
         takePictureButton.setOnClickListener(takePictureButtonClickListener)
     }
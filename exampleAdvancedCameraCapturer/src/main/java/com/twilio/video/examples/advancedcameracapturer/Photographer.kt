@@ -1,57 +1,91 @@
 package com.twilio.video.examples.advancedcameracapturer
 
 import android.graphics.Bitmap
-import com.twilio.video.VideoView
+import com.twilio.video.examples.common.ProcessorChain
 import com.twilio.video.examples.common.toBitmap
-import java.util.concurrent.atomic.AtomicReference
+import java.util.concurrent.ConcurrentLinkedQueue
+import java.util.concurrent.Executors
+import java.util.concurrent.RejectedExecutionException
+import java.util.concurrent.atomic.AtomicBoolean
 import tvi.webrtc.VideoFrame
-import tvi.webrtc.VideoProcessor
-import tvi.webrtc.VideoSink
 
 typealias PictureListener = (Bitmap?) -> Unit
 
-class Photographer(private val videoView: VideoView) : VideoProcessor {
-    private val pictureRequest = AtomicReference<PictureListener?>(null)
+/**
+ * Photographer is a [ProcessorChain] tap that takes pictures from unadapted frames on request.
+ *
+ * Picture requests are queued, so concurrent calls to [takePicture] are all answered. The capturer
+ * thread only retains the next frame and hands it to a picture worker, which converts it once and
+ * passes the same [Bitmap] to every request queued when the frame was captured. Requests made
+ * while a picture is being converted wait for a later frame, so at most one frame is retained for
+ * pictures at any time.
+ */
+class Photographer : ProcessorChain.Tap("Photographer") {
+    private val pictureRequests = ConcurrentLinkedQueue<PictureListener>()
+    private val converting = AtomicBoolean(false)
+    private val pictureWorker = Executors.newSingleThreadExecutor { runnable ->
+        Thread(runnable, "Photographer").apply { isDaemon = true }
+    }
 
     /**
-     * These methods are part of the [tvi.webrtc.VideoProcessor] API, but are not required to be
-     * implemented for this example.
+     * Take the queued picture requests and capture the current frame for them on the picture
+     * worker, unless a previous frame is still being converted.
      */
-    override fun onCapturerStopped() {}
-    override fun onCapturerStarted(success: Boolean) {}
-    override fun setSink(videoSink: VideoSink?) {}
-    override fun onFrameCaptured(frame: VideoFrame?) {}
+    override fun onFrame(videoFrame: VideoFrame) {
+        if (pictureRequests.isNotEmpty() && converting.compareAndSet(false, true)) {
+            takePictures(videoFrame)
+        }
+    }
 
     /**
-     * This onFrameCaptured method provides an unadapted [tvi.webrtc.VideoFrame].
-     *
-     * The following code demonstrates how to capture the unadapted frame to a [Bitmap] and then
-     * forward the adapted frame to a [VideoView].
+     * Request a picture of the next frame captured. [pictureListener] is invoked on the picture
+     * worker thread, and the Bitmap may be shared with other requests answered by the same frame.
      */
-    override fun onFrameCaptured(
-        videoFrame: VideoFrame?,
-        parameters: VideoProcessor.FrameAdaptationParameters?
-    ) {
-        requireNotNull(videoFrame)
-        videoFrame.retain()
+    fun takePicture(pictureListener: PictureListener) {
+        pictureRequests.add(pictureListener)
+    }
 
-        /**
-         * Get the picture request and then capture the current frame to a Bitmap. The
-         * picture request is cleared for subsequent calls to [takePicture].
-         */
-        pictureRequest.getAndSet(null)?.invoke(videoFrame.toBitmap())
+    /**
+     * Stops the picture worker once the picture in progress, if any, has been delivered. Requests
+     * that have not been served are dropped.
+     */
+    fun release() {
+        pictureWorker.shutdown()
+        pictureRequests.clear()
+    }
 
-        /**
-         * Adapt the current frame and forward to the video view.
-         */
-        VideoProcessor.applyFrameAdaptationParameters(videoFrame, parameters)?.let {
-            videoView.onFrame(it)
-            it.release()
-        } ?: videoView.onFrame(videoFrame)
-        videoFrame.release()
+    private fun takePictures(videoFrame: VideoFrame) {
+        val pictureListeners = ArrayList<PictureListener>()
+        while (true) {
+            pictureListeners.add(pictureRequests.poll() ?: break)
+        }
+        videoFrame.retain()
+        try {
+            pictureWorker.execute {
+                val bitmap = convertToBitmap(videoFrame)
+                videoFrame.release()
+                converting.set(false)
+                pictureListeners.forEach { it(bitmap) }
+            }
+        } catch (e: RejectedExecutionException) {
+            // The photographer has been released
+            videoFrame.release()
+            converting.set(false)
+        }
     }
 
-    fun takePicture(pictureListener: PictureListener) {
-        this.pictureRequest.set(pictureListener)
+    private fun convertToBitmap(videoFrame: VideoFrame): Bitmap? {
+        /*
+         * The worker has no EGL context, so texture frames are read back with the buffer's own
+         * toI420, which runs the conversion on the thread that owns the texture.
+         */
+        val i420Frame = VideoFrame(
+            videoFrame.buffer.toI420(),
+            videoFrame.rotation,
+            videoFrame.timestampNs
+        )
+        val bitmap = i420Frame.toBitmap()
+        i420Frame.release()
+        return bitmap
     }
 }
@@ -3,17 +3,22 @@ package com.twilio.video.examples.customcapturer
 import android.content.Context
 import android.graphics.Bitmap
 import android.graphics.Canvas
+import android.graphics.Color
 import android.os.Handler
 import android.os.Looper
 import android.os.SystemClock
 import android.view.View
-import com.twilio.video.Rgba8888Buffer
+import android.view.ViewTreeObserver
 import com.twilio.video.VideoCapturer
 import com.twilio.video.VideoDimensions
 import com.twilio.video.VideoFormat
-import java.nio.ByteBuffer
+import com.twilio.video.examples.common.DirectByteBufferPool
+import com.twilio.video.examples.common.LatestWinsWorker
+import com.twilio.video.examples.common.RgbaToI420Converter
+import java.util.ArrayDeque
 import java.util.concurrent.TimeUnit
 import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicReference
 import tvi.webrtc.CapturerObserver
 import tvi.webrtc.SurfaceTextureHelper
 import tvi.webrtc.VideoFrame
@@ -22,18 +27,100 @@ import tvi.webrtc.VideoFrame
  * ViewCapturer demonstrates how to implement a custom [VideoCapturer]. This class
  * captures the contents of a provided view and signals the [tvi.webrtc.CapturerObserver] when
  * the frame is available.
+ *
+ * Capturing is pipelined: the main thread only draws the view into a pooled bitmap and hands it to
+ * a capture thread, which copies the pixels into a pooled direct buffer, converts them into a
+ * pooled I420 buffer with [RgbaToI420Converter] and delivers the frame. The hand-off holds a
+ * single bitmap, so if the capture thread falls behind, the waiting bitmap is replaced by the
+ * newer one and the UI thread never waits.
+ *
+ * With [CaptureMode.ON_CHANGE] the view is only drawn again after its window has drawn, which
+ * happens when some content was invalidated. While nothing changes, the previous frame is resent
+ * every [keepAliveMs] so the track does not appear frozen to late joiners or the encoder.
+ *
+ * Captures are scheduled at the frame rate passed to [startCapture], which is the [framerate]
+ * reported by [getCaptureFormat] unless the SDK asks for another, and the format reports the
+ * rate in use from then on. Ticks are placed against the time capturing started, so slow draws
+ * cause ticks to be skipped rather than the rate to drift. This rate is a maximum: with
+ * [CaptureMode.ON_CHANGE] an unchanged view is only delivered every [keepAliveMs].
+ *
+ * Large views are drawn through a scaled canvas so frames fit within [maxDimensions], or within
+ * the size passed to [startCapture] once capturing, in either orientation and keeping the aspect
+ * ratio of the view. Views are never scaled up.
  */
-class ViewCapturer(private val view: View) : VideoCapturer {
+class ViewCapturer(
+    private val view: View,
+    private val captureMode: CaptureMode = CaptureMode.ON_CHANGE,
+    private val keepAliveMs: Long = DEFAULT_KEEP_ALIVE_MS,
+    private val framerate: Int = DEFAULT_FRAMERATE,
+    maxDimensions: VideoDimensions = VideoDimensions(DEFAULT_MAX_WIDTH, DEFAULT_MAX_HEIGHT)
+) : VideoCapturer {
+
+    /**
+     * When [ViewCapturer] draws the view.
+     */
+    enum class CaptureMode {
+        /**
+         * Draw the view for every frame.
+         */
+        CONTINUOUS,
+
+        /**
+         * Draw the view only once it has changed and otherwise resend the previous frame.
+         */
+        ON_CHANGE
+    }
+
     private val handler = Handler(Looper.getMainLooper())
     private var capturerObserver: CapturerObserver? = null
     private val started =
         AtomicBoolean(false)
+    private val pixelBufferPool = DirectByteBufferPool(maxSizes = 1, maxPerSize = 1)
+    private val i420Converter = RgbaToI420Converter()
+    private val viewBitmaps = ArrayDeque<Bitmap>(MAX_POOLED_BITMAPS)
+    private val viewCanvas = Canvas()
+    private var contentChanged = true
+    private val lastFrameBuffer = AtomicReference<VideoFrame.Buffer?>(null)
+    @Volatile private var lastFrameTimeMs = 0L
+    private var captureFramerate = framerate
+    private var captureStartMs = 0L
+    private var captureTick = 0L
+    @Volatile private var maxCaptureWidth = maxDimensions.width
+    @Volatile private var maxCaptureHeight = maxDimensions.height
+    private val drawListener = ViewTreeObserver.OnDrawListener { contentChanged = true }
+
+    /**
+     * A view drawn on the main thread, or a request to resend the last frame when [bitmap] is
+     * null.
+     */
+    private class ViewFrame(val bitmap: Bitmap?, val timeMs: Long)
+
+    private val captureWorker = LatestWinsWorker<ViewFrame>(
+        "ViewCapturer",
+        { viewFrame -> viewFrame.bitmap?.let { releaseViewBitmap(it) } }
+    ) { viewFrame ->
+        val viewBitmap = viewFrame.bitmap
+        if (viewBitmap != null) {
+            captureFrame(viewBitmap, viewFrame.timeMs)
+        } else {
+            resendLastFrame(viewFrame.timeMs)
+        }
+    }
 
     private val viewCapturer = {
         val dropFrame = view.width == 0 || view.height == 0
+        val nowMs = SystemClock.elapsedRealtime()
 
         // Only capture the view if the dimensions have been established
-        if (!dropFrame) {
+        if (!dropFrame && captureMode == CaptureMode.ON_CHANGE && !contentChanged) {
+            // Nothing was drawn since the last capture, so keep the previous frame alive
+            if (nowMs - lastFrameTimeMs >= keepAliveMs) {
+                lastFrameTimeMs = nowMs
+                captureWorker.offer(ViewFrame(null, nowMs))
+            }
+        } else if (!dropFrame) {
+            contentChanged = false
+
             // Draw view into bitmap backed canvas
             val measuredWidth = View.MeasureSpec.makeMeasureSpec(
                 view.width,
@@ -45,30 +132,24 @@ class ViewCapturer(private val view: View) : VideoCapturer {
             )
             view.measure(measuredWidth, measuredHeight)
             view.layout(0, 0, view.measuredWidth, view.measuredHeight)
-            val viewBitmap = Bitmap.createBitmap(
-                view.width, view.height,
-                Bitmap.Config.ARGB_8888
+            val scale = captureScale(view.width, view.height)
+            val viewBitmap = acquireViewBitmap(
+                scaledDimension(view.width, scale),
+                scaledDimension(view.height, scale)
+            )
+            viewBitmap.eraseColor(Color.TRANSPARENT)
+            viewCanvas.setBitmap(viewBitmap)
+            val saveCount = viewCanvas.save()
+            viewCanvas.scale(
+                viewBitmap.width.toFloat() / view.width,
+                viewBitmap.height.toFloat() / view.height
             )
-            val viewCanvas = Canvas(viewBitmap)
             view.draw(viewCanvas)
+            viewCanvas.restoreToCount(saveCount)
+            viewCanvas.setBitmap(null)
 
-            // Extract the frame from the bitmap
-            val bytes = viewBitmap.byteCount
-            val buffer = ByteBuffer.allocate(bytes)
-            viewBitmap.copyPixelsToBuffer(buffer)
-
-            // Create video frame
-            val captureTimeNs =
-                TimeUnit.MILLISECONDS.toNanos(SystemClock.elapsedRealtime())
-            val videoBuffer: VideoFrame.Buffer =
-                Rgba8888Buffer(buffer, view.width, view.height)
-            val videoFrame = VideoFrame(videoBuffer, 0, captureTimeNs)
-
-            // Notify the observer
-            if (started.get()) {
-                capturerObserver?.onFrameCaptured(videoFrame)
-                videoFrame.release()
-            }
+            // Hand the drawing to the capture thread
+            captureWorker.offer(ViewFrame(viewBitmap, nowMs))
         }
 
         // Schedule the next capture
@@ -77,9 +158,24 @@ class ViewCapturer(private val view: View) : VideoCapturer {
         }
     }
 
+    init {
+        require(framerate in 1..MAX_FRAMERATE) {
+            "The frame rate must be from 1 to $MAX_FRAMERATE"
+        }
+    }
+
+    /**
+     * Reports the size frames are captured at and the frame rate captures are scheduled at. The
+     * frame rate is the maximum delivered. With [CaptureMode.ON_CHANGE] it is only reached while
+     * the view keeps changing, so encoders should treat it as an upper bound.
+     */
     override fun getCaptureFormat(): VideoFormat {
-        val videoDimensions = VideoDimensions(view.width, view.height)
-        return VideoFormat(videoDimensions, 30)
+        val scale = captureScale(view.width, view.height)
+        val videoDimensions = VideoDimensions(
+            scaledDimension(view.width, scale),
+            scaledDimension(view.height, scale)
+        )
+        return VideoFormat(videoDimensions, captureFramerate)
     }
 
     /**
@@ -99,9 +195,24 @@ class ViewCapturer(private val view: View) : VideoCapturer {
 
     override fun startCapture(width: Int, height: Int, framerate: Int) {
         started.set(true)
+        lastFrameBuffer.getAndSet(null)?.release()
+        if (captureMode == CaptureMode.ON_CHANGE) {
+            handler.post {
+                contentChanged = true
+                view.viewTreeObserver.addOnDrawListener(drawListener)
+            }
+        }
+
+        captureFramerate = framerate.coerceIn(1, MAX_FRAMERATE)
+        if (width > 0 && height > 0) {
+            maxCaptureWidth = width
+            maxCaptureHeight = height
+        }
+        captureStartMs = SystemClock.uptimeMillis()
+        captureTick = 1
 
         // Notify capturer API that the capturer has started
-        val capturerStarted = handler.postDelayed(viewCapturer, VIEW_CAPTURER_FRAMERATE_MS.toLong())
+        val capturerStarted = handler.postAtTime(viewCapturer, tickTimeMs(captureTick))
         capturerObserver?.onCapturerStarted(capturerStarted)
     }
 
@@ -112,13 +223,169 @@ class ViewCapturer(private val view: View) : VideoCapturer {
         started.set(false)
         handler.removeCallbacks(viewCapturer)
         capturerObserver?.onCapturerStopped()
+        lastFrameBuffer.getAndSet(null)?.release()
+        handler.post {
+            view.viewTreeObserver.removeOnDrawListener(drawListener)
+            synchronized(viewBitmaps) { viewBitmaps.clear() }
+        }
+    }
+
+    /**
+     * Stops the capture thread and drops the pooled bitmaps and buffers. The capturer cannot be
+     * started again afterwards.
+     */
+    override fun dispose() {
+        captureWorker.release()
+        lastFrameBuffer.getAndSet(null)?.release()
+        pixelBufferPool.clear()
+        i420Converter.clear()
+        synchronized(viewBitmaps) { viewBitmaps.clear() }
+    }
+
+    /**
+     * Converts a drawn view to I420 and delivers it. Runs on the capture thread.
+     */
+    private fun captureFrame(viewBitmap: Bitmap, timeMs: Long) {
+        // Extract the frame from the bitmap into a pooled buffer
+        val width = viewBitmap.width
+        val height = viewBitmap.height
+        val rowBytes = viewBitmap.rowBytes
+        val pixels = pixelBufferPool.acquire(viewBitmap.byteCount)
+        viewBitmap.copyPixelsToBuffer(pixels)
+        pixels.rewind()
+        releaseViewBitmap(viewBitmap)
+
+        val i420Buffer = i420Converter.convert(pixels, rowBytes, width, height)
+        pixelBufferPool.release(pixels)
+
+        // Keep the buffer in case it has to be resent
+        deliverFrame(i420Buffer, timeMs)
+        if (captureMode == CaptureMode.ON_CHANGE) {
+            keepLastFrame(i420Buffer)
+        } else {
+            i420Buffer.release()
+        }
+    }
+
+    /**
+     * Sends the last frame again with a new timestamp. Runs on the capture thread.
+     */
+    private fun resendLastFrame(timeMs: Long) {
+        val videoBuffer = lastFrameBuffer.getAndSet(null) ?: return
+        deliverFrame(videoBuffer, timeMs)
+        keepLastFrame(videoBuffer)
+    }
+
+    /**
+     * Keeps [videoBuffer] for resending, taking over the caller's reference, or releases it once
+     * capturing stopped. Runs on the capture thread.
+     */
+    private fun keepLastFrame(videoBuffer: VideoFrame.Buffer) {
+        if (!started.get()) {
+            videoBuffer.release()
+            return
+        }
+        lastFrameBuffer.getAndSet(videoBuffer)?.release()
+
+        // stopCapture may have cleared the last frame just before it was stored
+        if (!started.get()) {
+            lastFrameBuffer.getAndSet(null)?.release()
+        }
+    }
+
+    /**
+     * Sends a frame of [videoBuffer] to the observer, leaving the caller's reference untouched.
+     */
+    private fun deliverFrame(videoBuffer: VideoFrame.Buffer, timeMs: Long) {
+        if (started.get()) {
+            videoBuffer.retain()
+            val videoFrame = VideoFrame(videoBuffer, 0, TimeUnit.MILLISECONDS.toNanos(timeMs))
+            capturerObserver?.onFrameCaptured(videoFrame)
+            videoFrame.release()
+            lastFrameTimeMs = timeMs
+        }
+    }
+
+    /**
+     * Returns a pooled bitmap of the view size. One bitmap can be drawing, one waiting and one
+     * being captured, so a few are enough to never allocate while the size stays the same.
+     */
+    private fun acquireViewBitmap(width: Int, height: Int): Bitmap {
+        synchronized(viewBitmaps) {
+            while (viewBitmaps.isNotEmpty()) {
+                val bitmap = viewBitmaps.removeFirst()
+                if (bitmap.width == width && bitmap.height == height) {
+                    return bitmap
+                }
+            }
+        }
+        return Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888)
+    }
+
+    private fun releaseViewBitmap(bitmap: Bitmap) {
+        synchronized(viewBitmaps) {
+            if (viewBitmaps.size < MAX_POOLED_BITMAPS) {
+                viewBitmaps.addFirst(bitmap)
+            }
+        }
     }
 
     private fun scheduleNextCapture() {
-        handler.postDelayed(viewCapturer, VIEW_CAPTURER_FRAMERATE_MS.toLong())
+        // Skip any ticks that passed while capturing instead of delaying the ones after them
+        val nextDueTick = (SystemClock.uptimeMillis() - captureStartMs) * captureFramerate /
+            MILLIS_PER_SECOND + 1
+        captureTick = maxOf(captureTick + 1, nextDueTick)
+        handler.postAtTime(viewCapturer, tickTimeMs(captureTick))
+    }
+
+    /**
+     * Returns the factor that fits a view into the capture size, matching their orientations.
+     */
+    private fun captureScale(viewWidth: Int, viewHeight: Int): Float {
+        if (viewWidth == 0 || viewHeight == 0) {
+            return 1f
+        }
+        val maxLongSide = maxOf(maxCaptureWidth, maxCaptureHeight).toFloat()
+        val maxShortSide = minOf(maxCaptureWidth, maxCaptureHeight).toFloat()
+        return minOf(
+            1f,
+            maxLongSide / maxOf(viewWidth, viewHeight),
+            maxShortSide / minOf(viewWidth, viewHeight)
+        )
     }
 
+    /**
+     * Scales a view dimension, rounding down to an even size as preferred by video encoders.
+     */
+    private fun scaledDimension(dimension: Int, scale: Float): Int {
+        if (scale == 1f) {
+            return dimension
+        }
+        return maxOf(2, (dimension * scale).toInt() and 1.inv())
+    }
+
+    private fun tickTimeMs(tick: Long) =
+        captureStartMs + tick * MILLIS_PER_SECOND / captureFramerate
+
     companion object {
-        private const val VIEW_CAPTURER_FRAMERATE_MS = 100
+        private const val MILLIS_PER_SECOND = 1000L
+        private const val MAX_POOLED_BITMAPS = 3
+        private const val DEFAULT_MAX_WIDTH = 1280
+        private const val DEFAULT_MAX_HEIGHT = 720
+
+        /**
+         * The frame rate reported by default. View content rarely needs more.
+         */
+        const val DEFAULT_FRAMERATE = 10
+
+        /**
+         * The highest frame rate the capturer schedules.
+         */
+        const val MAX_FRAMERATE = 30
+
+        /**
+         * How often an unchanged view is resent by default.
+         */
+        const val DEFAULT_KEEP_ALIVE_MS = 1_000L
     }
 }
@@ -13,12 +13,20 @@ import android.widget.Toast
 import com.twilio.video.CameraCapturer
 import com.twilio.video.LocalVideoTrack
 import com.twilio.video.VideoView
+import com.twilio.video.examples.common.MotionDetectorSink
+import com.twilio.video.examples.common.MotionListener
+import com.twilio.video.examples.common.ThrottledVideoSink
+import java.io.File
 import tvi.webrtc.Camera1Enumerator
 
 /**
  * This example demonstrates how to implement a custom renderer. Here we render the contents
  * of our [CameraCapturer] to a video view and to a snapshot renderer which allows user to
- * grab the latest frame rendered. When the camera view is tapped the frame is updated.
+ * grab the latest frame rendered. When the camera view is tapped the frame is updated. A long
+ * press captures a burst of frames and shows the last one. A long press on the snapshot saves the
+ * last few seconds of video recorded by a [ReplayVideoSink]. A [MotionDetectorSink] also takes a
+ * snapshot whenever motion starts in front of the camera. Camera frames are textures that have to
+ * be read back for recording and analysis, so both sinks only see a few of them per second.
  */
 class CustomVideoSinkVideoActivity : Activity() {
     private lateinit var localVideoView: VideoView
@@ -27,6 +35,19 @@ class CustomVideoSinkVideoActivity : Activity() {
     private val snapshotVideoRenderer by lazy {
         SnapshotVideoSink(snapshotImageView)
     }
+    private val replayVideoSink by lazy {
+        ReplayVideoSink(maxFramesPerSecond = REPLAY_MAX_FPS)
+    }
+    private val motionDetectorSink by lazy {
+        val motionDetector = MotionDetectorSink(object : MotionListener {
+            override fun onMotionChanged(moving: Boolean, score: Float) {
+                if (moving) {
+                    snapshotVideoRenderer.takeSnapshot()
+                }
+            }
+        })
+        ThrottledVideoSink(motionDetector, MOTION_DETECTION_MAX_FPS)
+    }
     private val frontCameraId by lazy {
         val camera1Enumerator = Camera1Enumerator()
         val cameraId = camera1Enumerator.deviceNames.find { camera1Enumerator.isFrontFacing(it) }
@@ -87,6 +108,10 @@ class CustomVideoSinkVideoActivity : Activity() {
     override fun onDestroy() {
         localVideoTrack?.removeSink(localVideoView)
         localVideoTrack?.removeSink(snapshotVideoRenderer)
+        localVideoTrack?.removeSink(replayVideoSink)
+        localVideoTrack?.removeSink(motionDetectorSink)
+        snapshotVideoRenderer.release()
+        replayVideoSink.release()
         localVideoTrack?.release()
         super.onDestroy()
     }
@@ -94,10 +119,38 @@ class CustomVideoSinkVideoActivity : Activity() {
     private fun addVideo() {
         localVideoTrack?.addSink(localVideoView)
         localVideoTrack?.addSink(snapshotVideoRenderer)
+        localVideoTrack?.addSink(replayVideoSink)
+        localVideoTrack?.addSink(motionDetectorSink)
         localVideoView.setOnClickListener {
             tapForSnapshotTextView.visibility = View.GONE
             snapshotVideoRenderer.takeSnapshot()
         }
+        localVideoView.setOnLongClickListener {
+            tapForSnapshotTextView.visibility = View.GONE
+            snapshotVideoRenderer.takeBurst(BURST_FRAMES, BURST_INTERVAL_MS) { bitmaps ->
+                snapshotImageView.setImageBitmap(bitmaps.lastOrNull { it != null })
+                Toast.makeText(
+                    this,
+                    getString(R.string.burst_captured, bitmaps.count { it != null }),
+                    Toast.LENGTH_SHORT
+                ).show()
+            }
+        }
+        snapshotImageView.setOnLongClickListener {
+            saveReplay()
+        }
+    }
+
+    private fun saveReplay(): Boolean {
+        val file = File(getExternalFilesDir(null), "replay-${System.currentTimeMillis()}.y4m")
+        return replayVideoSink.saveReplay(file) { savedFile, frameCount, error ->
+            val message = if (error == null) {
+                getString(R.string.replay_saved, frameCount, savedFile.path)
+            } else {
+                getString(R.string.replay_failed)
+            }
+            Toast.makeText(this, message, Toast.LENGTH_LONG).show()
+        }
     }
 
     private fun checkPermissionForCamera(): Boolean {
@@ -115,5 +168,9 @@ class CustomVideoSinkVideoActivity : Activity() {
 
     companion object {
         private const val CAMERA_PERMISSION_REQUEST_CODE = 100
+        private const val BURST_FRAMES = 10
+        private const val BURST_INTERVAL_MS = 200L
+        private const val MOTION_DETECTION_MAX_FPS = 5
+        private const val REPLAY_MAX_FPS = 10
     }
 }
@@ -0,0 +1,249 @@
+package com.twilio.video.examples.customvideosink
+
+import android.os.Handler
+import android.os.Looper
+import android.util.Log
+import com.twilio.video.examples.common.ThrottledVideoSink
+import com.twilio.video.examples.common.copyI420To
+import com.twilio.video.examples.common.i420Size
+import java.io.File
+import java.io.FileOutputStream
+import java.io.IOException
+import java.nio.ByteBuffer
+import java.nio.channels.WritableByteChannel
+import java.util.ArrayDeque
+import java.util.concurrent.Executors
+import java.util.concurrent.RejectedExecutionException
+import java.util.concurrent.TimeUnit
+import tvi.webrtc.VideoFrame
+import tvi.webrtc.VideoSink
+
+typealias ReplayListener = (file: File, frameCount: Int, error: IOException?) -> Unit
+
+/**
+ * ReplayVideoSink keeps the last [historyMs] of a track as packed I420 copies so the recent past
+ * can be saved on request with [saveReplay], without recording the whole call.
+ *
+ * At most [maxFramesPerSecond] frames are recorded, and the rest are dropped without being touched.
+ * The saved video plays at the rate that was recorded. Copies are held in direct buffers that are
+ * allocated once and then recycled, so recording I420 frames, such as those of remote tracks, does
+ * not allocate at steady state. Texture frames, such as camera frames captured to a texture, have
+ * to be read back first, and the SDK allocates a new frame sized I420 buffer for every read back.
+ * Keep [maxFramesPerSecond] low for such tracks, because the read back happens on the thread
+ * delivering frames.
+ *
+ * The copies never exceed [byteBudget] in total; when the budget is reached the oldest copy is
+ * overwritten, which shortens the history for large frames. Saving hands the recorded copies to a
+ * background writer and returns each one to the ring once it has been written. Frames are stored
+ * unrotated, as the Y4M format has no way to express rotation.
+ */
+class ReplayVideoSink(
+    private val historyMs: Long = DEFAULT_HISTORY_MS,
+    private val byteBudget: Long = DEFAULT_BYTE_BUDGET,
+    maxFramesPerSecond: Int = DEFAULT_MAX_FRAMES_PER_SECOND
+) : VideoSink {
+    private val history = ArrayDeque<ReplayFrame>()
+    private val freeFrames = ArrayDeque<ReplayFrame>()
+    private var frameWidth = 0
+    private var frameHeight = 0
+    private var allocatedBytes = 0L
+    private var saving = false
+    private val handler = Handler(Looper.getMainLooper())
+    private val writer = Executors.newSingleThreadExecutor { runnable ->
+        Thread(runnable, "ReplayVideoSink").apply { isDaemon = true }
+    }
+    private val recorder = ThrottledVideoSink(VideoSink { record(it) }, maxFramesPerSecond)
+
+    /**
+     * A recycled copy of one frame.
+     */
+    private class ReplayFrame(val data: ByteBuffer) {
+        var width = 0
+        var height = 0
+        var timestampNs = 0L
+    }
+
+    override fun onFrame(videoFrame: VideoFrame) {
+        recorder.onFrame(videoFrame)
+    }
+
+    private fun record(videoFrame: VideoFrame) {
+        val replayFrame = obtainFrame(videoFrame) ?: return
+
+        // Only this thread touches a frame between obtaining it and adding it to the history
+        replayFrame.data.clear()
+        videoFrame.copyI420To(replayFrame.data)
+        replayFrame.data.flip()
+        replayFrame.width = videoFrame.buffer.width
+        replayFrame.height = videoFrame.buffer.height
+        replayFrame.timestampNs = videoFrame.timestampNs
+
+        synchronized(this) {
+            if (replayFrame.data.capacity() == videoFrame.i420Size() &&
+                replayFrame.width == frameWidth &&
+                replayFrame.height == frameHeight
+            ) {
+                history.addLast(replayFrame)
+            } else {
+                recycle(replayFrame)
+            }
+        }
+    }
+
+    /**
+     * Writes the recorded history to [file] as a Y4M video from a background thread and clears
+     * it. [replayListener] is invoked on the main thread once the file has been written.
+     *
+     * @return false if a replay is already being saved or nothing has been recorded yet.
+     */
+    fun saveReplay(file: File, replayListener: ReplayListener): Boolean {
+        val frames = synchronized(this) {
+            if (saving || history.isEmpty()) {
+                return false
+            }
+            saving = true
+            ArrayList(history).also { history.clear() }
+        }
+
+        try {
+            writer.execute {
+                val error = try {
+                    writeY4m(file, frames)
+                    null
+                } catch (e: IOException) {
+                    Log.e(TAG, "Failed to save replay to $file", e)
+                    file.delete()
+                    e
+                } finally {
+                    synchronized(this) {
+                        frames.forEach { recycle(it) }
+                        saving = false
+                    }
+                }
+                handler.post { replayListener(file, if (error == null) frames.size else 0, error) }
+            }
+        } catch (e: RejectedExecutionException) {
+            synchronized(this) {
+                frames.forEach { recycle(it) }
+                saving = false
+            }
+            return false
+        }
+        return true
+    }
+
+    /**
+     * Drops the recorded history and stops the writer once any replay in progress is saved. Call
+     * once the sink has been removed from its track.
+     */
+    fun release() {
+        writer.shutdown()
+        synchronized(this) {
+            history.forEach { allocatedBytes -= it.data.capacity() }
+            freeFrames.forEach { allocatedBytes -= it.data.capacity() }
+            history.clear()
+            freeFrames.clear()
+        }
+    }
+
+    /**
+     * Returns a frame to copy [videoFrame] into, or null if every frame is being saved. Frames
+     * older than [historyMs] are recycled first, and the oldest frame is reused once the byte
+     * budget is spent.
+     */
+    @Synchronized
+    private fun obtainFrame(videoFrame: VideoFrame): ReplayFrame? {
+        val width = videoFrame.buffer.width
+        val height = videoFrame.buffer.height
+        if (width != frameWidth || height != frameHeight) {
+            // Copies of another size cannot be reused, so free them for the new size
+            frameWidth = width
+            frameHeight = height
+            while (history.isNotEmpty()) {
+                recycle(history.removeFirst())
+            }
+            while (freeFrames.isNotEmpty()) {
+                allocatedBytes -= freeFrames.removeFirst().data.capacity()
+            }
+        }
+
+        val expiredNs = videoFrame.timestampNs - TimeUnit.MILLISECONDS.toNanos(historyMs)
+        while (history.isNotEmpty() && history.peekFirst().timestampNs < expiredNs) {
+            recycle(history.removeFirst())
+        }
+
+        val size = videoFrame.i420Size()
+        return freeFrames.pollFirst()
+            ?: if (allocatedBytes + size <= byteBudget) {
+                allocatedBytes += size
+                ReplayFrame(ByteBuffer.allocateDirect(size))
+            } else {
+                history.pollFirst()
+            }
+    }
+
+    /**
+     * Makes [replayFrame] available again, or forgets it if it no longer fits the frame size.
+     * Must hold the sink lock.
+     */
+    private fun recycle(replayFrame: ReplayFrame) {
+        if (replayFrame.data.capacity() == i420Size(frameWidth, frameHeight)) {
+            freeFrames.addLast(replayFrame)
+        } else {
+            allocatedBytes -= replayFrame.data.capacity()
+        }
+    }
+
+    private fun writeY4m(file: File, frames: List<ReplayFrame>) {
+        FileOutputStream(file).channel.use { channel ->
+            val first = frames.first()
+            val durationNs = frames.last().timestampNs - first.timestampNs
+            val frameRateMillis = if (frames.size > 1 && durationNs > 0) {
+                (frames.size - 1) * TimeUnit.SECONDS.toNanos(1000) / durationNs
+            } else {
+                DEFAULT_FRAME_RATE_MILLIS
+            }
+            writeFully(
+                channel,
+                ByteBuffer.wrap(
+                    ("YUV4MPEG2 W${first.width} H${first.height} F$frameRateMillis:1000 " +
+                        "Ip A1:1 C420jpeg\n").toByteArray(Charsets.US_ASCII)
+                )
+            )
+            val frameHeader = ByteBuffer.wrap("FRAME\n".toByteArray(Charsets.US_ASCII))
+            for (frame in frames) {
+                frameHeader.rewind()
+                writeFully(channel, frameHeader)
+                writeFully(channel, frame.data)
+            }
+        }
+    }
+
+    private fun writeFully(channel: WritableByteChannel, src: ByteBuffer) {
+        while (src.hasRemaining()) {
+            channel.write(src)
+        }
+    }
+
+    companion object {
+        private const val TAG = "ReplayVideoSink"
+
+        /**
+         * How much of the track is kept by default.
+         */
+        const val DEFAULT_HISTORY_MS = 5_000L
+
+        /**
+         * Default cap on the memory used for copies, enough for about five seconds of 720p video
+         * at 15 fps.
+         */
+        const val DEFAULT_BYTE_BUDGET = 100L * 1024 * 1024
+
+        /**
+         * The default recording rate, which matches [DEFAULT_BYTE_BUDGET].
+         */
+        const val DEFAULT_MAX_FRAMES_PER_SECOND = 15
+
+        private const val DEFAULT_FRAME_RATE_MILLIS = 30_000L
+    }
+}
@@ -1,40 +1,194 @@
 package com.twilio.video.examples.customvideosink
 
+import android.graphics.Bitmap
 import android.os.Handler
 import android.os.Looper
 import android.widget.ImageView
+import com.twilio.video.examples.common.LatestWinsWorker
 import com.twilio.video.examples.common.toBitmap
+import java.util.concurrent.Executors
+import java.util.concurrent.RejectedExecutionException
+import java.util.concurrent.TimeUnit
 import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicReference
+import kotlin.math.max
+import kotlin.math.roundToInt
 import tvi.webrtc.VideoFrame
 import tvi.webrtc.VideoSink
 
+typealias BurstListener = (List<Bitmap?>) -> Unit
+
 /**
- * SnapshotVideoSink demonstrates how to implement a custom [tvi.webrtc.VideoSink]. Caches the
- * last frame rendered and will update the provided image view any time [takeSnapshot] is
- * invoked.
+ * SnapshotVideoSink demonstrates how to implement a custom [tvi.webrtc.VideoSink]. Updates the
+ * provided image view with the next frame rendered any time [takeSnapshot] is invoked.
+ *
+ * The rendering thread only retains the requested frame and hands it to a snapshot worker, so
+ * rendering never waits for a conversion. If a new snapshot is requested before the worker gets
+ * to the previous frame, the newer frame replaces it.
+ *
+ * [takeBurst] captures several frames at a fixed interval and delivers them together. At most
+ * [MAX_PENDING_BURST_FRAMES] frames are retained while they wait for conversion; when the burst
+ * worker falls behind, incoming frames are skipped rather than queued. Burst frames are converted
+ * to bitmaps no larger than [MAX_BURST_FRAME_SIZE] on their longer side, so a burst holds at most
+ * [MAX_BURST_FRAMES] such bitmaps whatever the track resolution.
  */
 class SnapshotVideoSink(private val imageView: ImageView) : VideoSink {
     private val snapshotRequsted =
         AtomicBoolean(false)
     private val handler = Handler(Looper.getMainLooper())
+    private val snapshotWorker = LatestWinsWorker<VideoFrame>(
+        "SnapshotVideoSink",
+        { videoFrame -> videoFrame.release() }
+    ) { videoFrame ->
+        val bitmap = convertToBitmap(videoFrame)
+        videoFrame.release()
+        handler.post { imageView.setImageBitmap(bitmap) }
+    }
+    private val burstExecutor = Executors.newSingleThreadExecutor { runnable ->
+        Thread(runnable, "SnapshotVideoSinkBurst").apply { isDaemon = true }
+    }
+    private val burst = AtomicReference<Burst?>(null)
+    private val pendingBurstFrames = AtomicInteger(0)
+
+    /**
+     * An in progress burst. The capture schedule is only touched on the rendering thread and the
+     * converted bitmaps only on the burst worker.
+     */
+    private class Burst(val count: Int, val intervalNs: Long, val listener: BurstListener) {
+        var captured = 0
+        var nextCaptureNs = UNSCHEDULED
+        val bitmaps = ArrayList<Bitmap?>(count)
+    }
 
     override fun onFrame(videoFrame: VideoFrame) {
-        videoFrame.retain()
         if (snapshotRequsted.compareAndSet(true, false)) {
-            val bitmap = videoFrame.toBitmap()
-            handler.post {
-                imageView.setImageBitmap(bitmap)
+            videoFrame.retain()
+            snapshotWorker.offer(videoFrame)
+        }
+        burst.get()?.let { captureBurstFrame(it, videoFrame) }
+    }
+
+    /**
+     * Request a snapshot of the next frame rendered.
+     */
+    fun takeSnapshot() {
+        snapshotRequsted.set(true)
+    }
+
+    /**
+     * Request [count] frames captured [intervalMs] apart. [burstListener] is invoked on the main
+     * thread with all of the bitmaps once the last frame has been converted.
+     *
+     * @return false if a burst is already in progress.
+     */
+    fun takeBurst(count: Int, intervalMs: Long, burstListener: BurstListener): Boolean {
+        require(count in 1..MAX_BURST_FRAMES) { "A burst must have 1 to $MAX_BURST_FRAMES frames" }
+        require(intervalMs > 0) { "The burst interval must be positive" }
+        return burst.compareAndSet(
+            null,
+            Burst(count, TimeUnit.MILLISECONDS.toNanos(intervalMs), burstListener)
+        )
+    }
+
+    /**
+     * Stops the snapshot and burst workers. Call once the sink has been removed from its track.
+     */
+    fun release() {
+        snapshotWorker.release()
+        burstExecutor.shutdown()
+    }
+
+    private fun captureBurstFrame(burst: Burst, videoFrame: VideoFrame) {
+        val timestampNs = videoFrame.timestampNs
+        if (burst.captured == burst.count ||
+            (burst.nextCaptureNs != UNSCHEDULED && timestampNs < burst.nextCaptureNs)
+        ) {
+            return
+        }
+
+        // Skip this frame rather than queue it when the worker has not caught up
+        if (pendingBurstFrames.get() >= MAX_PENDING_BURST_FRAMES) {
+            return
+        }
+
+        // Stay on the original schedule, skipping any ticks that have already passed
+        var nextCaptureNs = if (burst.nextCaptureNs == UNSCHEDULED) {
+            timestampNs
+        } else {
+            burst.nextCaptureNs
+        }
+        while (nextCaptureNs <= timestampNs) {
+            nextCaptureNs += burst.intervalNs
+        }
+        burst.nextCaptureNs = nextCaptureNs
+        burst.captured++
+        val lastFrame = burst.captured == burst.count
+
+        pendingBurstFrames.incrementAndGet()
+        videoFrame.retain()
+        try {
+            burstExecutor.execute {
+                burst.bitmaps.add(convertToBurstBitmap(videoFrame))
                 videoFrame.release()
+                pendingBurstFrames.decrementAndGet()
+                if (lastFrame) {
+                    this.burst.set(null)
+                    handler.post { burst.listener(burst.bitmaps) }
+                }
             }
-        } else {
+        } catch (e: RejectedExecutionException) {
+            // The sink has been released
             videoFrame.release()
+            pendingBurstFrames.decrementAndGet()
         }
     }
 
+    private fun convertToBitmap(videoFrame: VideoFrame): Bitmap? {
+        /*
+         * The worker has no EGL context, so texture frames are read back with the buffer's own
+         * toI420, which runs the conversion on the thread that owns the texture.
+         */
+        val i420Frame = VideoFrame(
+            videoFrame.buffer.toI420(),
+            videoFrame.rotation,
+            videoFrame.timestampNs
+        )
+        val bitmap = i420Frame.toBitmap()
+        i420Frame.release()
+        return bitmap
+    }
+
     /**
-     * Request a snapshot on the rendering thread.
+     * Converts a frame to an upright bitmap scaled down to fit [MAX_BURST_FRAME_SIZE]. The scaled
+     * conversion reads texture frames back through the buffer, so no EGL context is needed.
      */
-    fun takeSnapshot() {
-        snapshotRequsted.set(true)
+    private fun convertToBurstBitmap(videoFrame: VideoFrame): Bitmap? {
+        val width = videoFrame.rotatedWidth
+        val height = videoFrame.rotatedHeight
+        val scale = minOf(1f, MAX_BURST_FRAME_SIZE.toFloat() / max(width, height))
+        return videoFrame.toBitmap(
+            max(1, (width * scale).roundToInt()),
+            max(1, (height * scale).roundToInt())
+        )
+    }
+
+    companion object {
+        /**
+         * The most frames a single burst may capture.
+         */
+        const val MAX_BURST_FRAMES = 10
+
+        /**
+         * The longest side of a burst bitmap, which keeps a full burst within about 16 MB.
+         */
+        const val MAX_BURST_FRAME_SIZE = 640
+
+        /**
+         * The most frames retained while waiting for the burst worker.
+         */
+        const val MAX_PENDING_BURST_FRAMES = 2
+
+        private const val UNSCHEDULED = Long.MIN_VALUE
     }
 }
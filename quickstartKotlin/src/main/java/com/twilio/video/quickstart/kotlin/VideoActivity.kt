@@ -8,6 +8,8 @@ import android.content.Intent
 import android.content.pm.PackageManager
 import android.media.AudioManager
 import android.os.Bundle
+import android.os.Handler
+import android.os.Looper
 import android.preference.PreferenceManager
 import android.support.design.widget.Snackbar
 import android.support.v4.app.ActivityCompat
@@ -51,6 +53,8 @@ import com.twilio.video.VideoCodec
 import com.twilio.video.VideoTrack
 import com.twilio.video.Vp8Codec
 import com.twilio.video.Vp9Codec
+import com.twilio.video.examples.common.FrameStatsSink
+import com.twilio.video.examples.common.ThrottledVideoSink
 import com.twilio.video.ktx.Video.connect
 import com.twilio.video.ktx.createLocalAudioTrack
 import com.twilio.video.ktx.createLocalVideoTrack
@@ -70,6 +74,8 @@ import tvi.webrtc.VideoSink
 class VideoActivity : AppCompatActivity() {
     private val CAMERA_MIC_PERMISSION_REQUEST_CODE = 1
     private val TAG = "VideoActivity"
+    private val VIDEO_STATS_INTERVAL_MS = 5000L
+    private val THUMBNAIL_MAX_FPS = 10
 
     /*
      * You must provide a Twilio Access Token to connect to the Video service
@@ -515,9 +521,32 @@ class VideoActivity : AppCompatActivity() {
 
     private var participantIdentity: String? = null
     private lateinit var localVideoView: VideoSink
+
+    /*
+     * The thumbnail is too small to benefit from the full capture rate, so it only renders
+     * a reduced frame rate.
+     */
+    private val thumbnailVideoSink by lazy {
+        ThrottledVideoSink(thumbnailVideoView, THUMBNAIL_MAX_FPS)
+    }
     private var disconnectedFromOnDestroy = false
     private var isSpeakerPhoneEnabled = true
 
+    /*
+     * Frame statistics sinks record what the local and remote renderers receive and are logged
+     * periodically while the activity is in the foreground.
+     */
+    private val localVideoStats = FrameStatsSink()
+    private val remoteVideoStats = FrameStatsSink()
+    private val statsHandler = Handler(Looper.getMainLooper())
+    private val logVideoStats = object : Runnable {
+        override fun run() {
+            Log.d(TAG, "Local video: ${localVideoStats.snapshot()}")
+            Log.d(TAG, "Remote video: ${remoteVideoStats.snapshot()}")
+            statsHandler.postDelayed(this, VIDEO_STATS_INTERVAL_MS)
+        }
+    }
+
     override fun onCreate(savedInstanceState: Bundle?) {
         super.onCreate(savedInstanceState)
         setContentView(R.layout.activity_video)
@@ -589,6 +618,8 @@ class VideoActivity : AppCompatActivity() {
             localVideoTrack
         }
         localVideoTrack?.addSink(localVideoView)
+        localVideoTrack?.addSink(localVideoStats)
+        statsHandler.postDelayed(logVideoStats, VIDEO_STATS_INTERVAL_MS)
 
         /*
          * If connected to a Room then share the local video track.
@@ -612,6 +643,8 @@ class VideoActivity : AppCompatActivity() {
     }
 
     override fun onPause() {
+        statsHandler.removeCallbacks(logVideoStats)
+
         /*
          * If this local video track is being shared in a Room, remove from local
          * participant before releasing the video track. Participants will be notified that
@@ -903,6 +936,7 @@ class VideoActivity : AppCompatActivity() {
         moveLocalVideoToThumbnailView()
         primaryVideoView.mirror = false
         videoTrack.addSink(primaryVideoView)
+        videoTrack.addSink(remoteVideoStats)
     }
 
     private fun moveLocalVideoToThumbnailView() {
@@ -910,9 +944,9 @@ class VideoActivity : AppCompatActivity() {
             thumbnailVideoView.visibility = View.VISIBLE
             with(localVideoTrack) {
                 this?.removeSink(primaryVideoView)
-                this?.addSink(thumbnailVideoView)
+                this?.addSink(thumbnailVideoSink)
             }
-            localVideoView = thumbnailVideoView
+            localVideoView = thumbnailVideoSink
             thumbnailVideoView.mirror = cameraCapturerCompat.cameraSource ==
                     CameraCapturerCompat.Source.FRONT_CAMERA
         }
@@ -940,13 +974,14 @@ class VideoActivity : AppCompatActivity() {
 
     private fun removeParticipantVideo(videoTrack: VideoTrack) {
         videoTrack.removeSink(primaryVideoView)
+        videoTrack.removeSink(remoteVideoStats)
     }
 
     private fun moveLocalVideoToPrimaryView() {
         if (thumbnailVideoView.visibility == View.VISIBLE) {
             thumbnailVideoView.visibility = View.GONE
             with(localVideoTrack) {
-                this?.removeSink(thumbnailVideoView)
+                this?.removeSink(thumbnailVideoSink)
                 this?.addSink(primaryVideoView)
             }
             localVideoView = primaryVideoView